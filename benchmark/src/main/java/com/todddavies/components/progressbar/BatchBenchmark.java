@@ -0,0 +1,78 @@
+package com.todddavies.components.progressbar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of one frame for many wheels at once, as advanced by the shared frame ticker
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int wheelCount;
+
+    private ProgressWheelEngine[] wheels;
+    private long frameTime;
+
+    @Setup
+    public void setUp() {
+        wheels = new ProgressWheelEngine[wheelCount];
+        for (int i = 0; i < wheelCount; i++) {
+            ProgressWheelEngine wheel = new ProgressWheelEngine();
+            wheel.setupBounds(48 + i % 100, 48 + i % 100, 0, 0, 0, 0);
+            // Mix both stepping modes, and leave a quarter of the wheels in increment mode
+            if (i % 2 == 0) {
+                wheel.setSpinRate(180 + i % 180, 0);
+            }
+            if (i % 4 != 3) {
+                wheel.startSpinning(0);
+            } else {
+                wheel.setProgress(i % 360);
+            }
+            wheels[i] = wheel;
+        }
+    }
+
+    @Benchmark
+    public int stepAll() {
+        frameTime += 16;
+        int moved = 0;
+        for (ProgressWheelEngine wheel : wheels) {
+            float oldProgress = wheel.getProgress();
+            if (wheel.step(frameTime)) {
+                wheel.computeBarDirtyBounds(oldProgress, wheel.getProgress());
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    @Benchmark
+    public int setProgressAll() {
+        frameTime++;
+        int value = (int) (frameTime % 360);
+        for (ProgressWheelEngine wheel : wheels) {
+            if (!wheel.isSpinning()) {
+                wheel.setProgress(value);
+            }
+        }
+        return value;
+    }
+}
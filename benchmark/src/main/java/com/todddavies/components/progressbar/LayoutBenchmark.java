@@ -0,0 +1,52 @@
+package com.todddavies.components.progressbar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of laying the wheel out, as done on every resize
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+
+    private ProgressWheelEngine engine;
+    private int size;
+
+    @Setup
+    public void setUp() {
+        engine = new ProgressWheelEngine();
+        engine.setBarWidth(25);
+        engine.setRimWidth(25);
+        engine.setContourSize(2);
+        size = 150;
+    }
+
+    @Benchmark
+    public float setupBounds() {
+        // Alternate between two sizes so that nothing can be hoisted out of the loop
+        size = size == 150 ? 151 : 150;
+        engine.setupBounds(size, 200, 5, 5, 5, 5);
+        return engine.getCircleCenterX();
+    }
+
+    @Benchmark
+    public float computeBarDirtyBounds() {
+        engine.computeBarDirtyBounds(size, size + 3);
+        return engine.getDirtyRight();
+    }
+}
@@ -0,0 +1,69 @@
+package com.todddavies.components.progressbar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of advancing a spinning wheel by one frame
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBenchmark {
+
+    private ProgressWheelEngine perStep;
+    private ProgressWheelEngine perSecond;
+    private long frameTime;
+
+    @Setup
+    public void setUp() {
+        perStep = new ProgressWheelEngine();
+        perStep.setupBounds(150, 150, 0, 0, 0, 0);
+        perStep.startSpinning(0);
+
+        perSecond = new ProgressWheelEngine();
+        perSecond.setupBounds(150, 150, 0, 0, 0, 0);
+        perSecond.setSpinRate(270, 0);
+        perSecond.startSpinning(0);
+    }
+
+    @Benchmark
+    public float stepBySpinSpeed() {
+        frameTime += 16;
+        perStep.step(frameTime);
+        return perStep.getProgress();
+    }
+
+    @Benchmark
+    public float stepBySpinRate() {
+        frameTime += 16;
+        perSecond.step(frameTime);
+        return perSecond.getProgress();
+    }
+
+    /**
+     * A full frame of a spinning wheel: step, then work out what to invalidate
+     */
+    @Benchmark
+    public float stepAndComputeDirtyBounds() {
+        frameTime += 16;
+        float oldProgress = perSecond.getProgress();
+        if (perSecond.step(frameTime)) {
+            perSecond.computeBarDirtyBounds(oldProgress, perSecond.getProgress());
+        }
+        return perSecond.getDirtyLeft();
+    }
+}
@@ -0,0 +1,80 @@
+package com.todddavies.components.progressbar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of preparing the text, as done by setText: splitting it into lines
+ * and positioning each line, either from scratch or through the shared layout cache.
+ * Paint.measureText is stood in for by a fixed advance per character, so this
+ * measures the wheel's own overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBenchmark {
+
+    private static final TextLayoutCache.Font MEASURER = new TextLayoutCache.Font() {
+        @Override
+        public float measureText(String text) {
+            return text.length() * 7.5f;
+        }
+
+        @Override
+        public float ascent() {
+            return -14f;
+        }
+
+        @Override
+        public float descent() {
+            return 4f;
+        }
+    };
+
+    @Param({"Loading...", "Click\none of the\nbuttons", "42%"})
+    public String text;
+
+    private ProgressWheelEngine engine;
+    private TextLayoutCache cache;
+
+    @Setup
+    public void setUp() {
+        engine = new ProgressWheelEngine();
+        engine.setupBounds(150, 150, 0, 0, 0, 0);
+        cache = new TextLayoutCache(TextLayoutCache.MAX_SIZE);
+    }
+
+    @Benchmark
+    public float setText() {
+        engine.setText(text);
+        engine.setupText(MEASURER, -14f, 4f);
+        return engine.getTextBaselineY();
+    }
+
+    @Benchmark
+    public float setTextCached() {
+        engine.setTextLayout(cache.obtain(text, 20f, null, MEASURER));
+        engine.positionText();
+        return engine.getTextBaselineY();
+    }
+
+    @Benchmark
+    public float setupText() {
+        engine.setupText(MEASURER, -14f, 4f);
+        return engine.getTextBaselineY();
+    }
+}
@@ -0,0 +1,140 @@
+package com.todddavies.components.progressbar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Fails the build if the per-frame work of the wheel starts allocating: stepping the
+ * spin, finding the area to redraw, deciding whether a change is visible, and laying
+ * out text that has already been measured. Allocations are counted with the HotSpot
+ * per-thread counter, in an interpreted JVM (see build.gradle): the JIT could remove
+ * allocations here that Android's runtime might not, and adds a few of its own.
+ */
+public class AllocationTest {
+
+    private static final int FRAMES = 10000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final TextLayoutCache.Font FONT = new TextLayoutCache.Font() {
+        @Override
+        public float measureText(String text) {
+            return text.length() * 7.5f;
+        }
+
+        @Override
+        public float ascent() {
+            return -14f;
+        }
+
+        @Override
+        public float descent() {
+            return 4f;
+        }
+    };
+
+    /**
+     * The work done for one frame
+     */
+    private interface Frame {
+        void run(int frame);
+    }
+
+    private ProgressWheelEngine engine;
+    private TextLayoutCache cache;
+
+    @Before
+    public void setUp() {
+        engine = new ProgressWheelEngine();
+        engine.setupBounds(150, 150, 5, 5, 5, 5);
+        cache = new TextLayoutCache(TextLayoutCache.MAX_SIZE);
+    }
+
+    @Test
+    public void stepAtSpinRateDoesNotAllocate() {
+        engine.setSpinRate(270f, 0);
+        engine.startSpinning(0);
+        assertNoAllocation("step at spinRate", new Frame() {
+            @Override
+            public void run(int frame) {
+                engine.step(frame * 16L);
+            }
+        });
+    }
+
+    @Test
+    public void stepBySpinSpeedDoesNotAllocate() {
+        engine.startSpinning(0);
+        assertNoAllocation("step by spinSpeed", new Frame() {
+            @Override
+            public void run(int frame) {
+                engine.step(frame * 16L);
+            }
+        });
+    }
+
+    @Test
+    public void invalidationDoesNotAllocate() {
+        assertNoAllocation("dirty bounds", new Frame() {
+            @Override
+            public void run(int frame) {
+                float degrees = engine.degreesFor(frame % 360);
+                if (engine.isVisibleChange(engine.getProgress(), degrees)) {
+                    engine.computeBarDirtyBounds(engine.getProgress(), degrees);
+                    engine.setProgress(degrees);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void cachedTextLayoutDoesNotAllocate() {
+        final String[] texts = {"Loading...", "Click\none of the\nbuttons", "42%"};
+        for (String text : texts) {
+            cache.obtain(text, 20f, null, FONT);
+        }
+        assertNoAllocation("cached text layout", new Frame() {
+            @Override
+            public void run(int frame) {
+                engine.setTextLayout(cache.obtain(texts[frame % texts.length], 20f, null, FONT));
+                engine.positionText();
+                engine.measureDiameter();
+            }
+        });
+    }
+
+    @Test
+    public void remeasuringTextDoesNotAllocate() {
+        engine.setText("Click\none of the\nbuttons");
+        assertNoAllocation("setupText", new Frame() {
+            @Override
+            public void run(int frame) {
+                engine.setupText(FONT, FONT.ascent(), FONT.descent());
+            }
+        });
+    }
+
+    /**
+     * Run the frames once to get class loading and lazy initialisation out of the way,
+     * then again counting the bytes allocated, less what counting itself costs
+     */
+    private static void assertNoAllocation(String what, Frame frame) {
+        for (int i = 0; i < FRAMES; i++) {
+            frame.run(i);
+        }
+        long threadId = Thread.currentThread().getId();
+        long overheadStart = THREADS.getThreadAllocatedBytes(threadId);
+        long start = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < FRAMES; i++) {
+            frame.run(i);
+        }
+        long end = THREADS.getThreadAllocatedBytes(threadId);
+        long overhead = start - overheadStart;
+        assertEquals(what + " allocated memory over " + FRAMES + " frames", 0, end - start - overhead);
+    }
+}
@@ -0,0 +1,96 @@
+package com.todddavies.components.progressbar;
+
+import android.os.SystemClock;
+
+/**
+ * Delivers one callback per display frame to an animating wheel, or fewer when
+ * given a frame interval. All running clocks share the single process-wide {@link FrameTicker}.
+ * <p/>
+ * Must be started and stopped from the UI thread.
+ */
+final class FrameClock {
+
+    interface Callback {
+        /**
+         * Called once per frame while the clock is running
+         *
+         * @param frameTimeMillis the frame time, in the {@link SystemClock#uptimeMillis()} time base
+         * @return true to receive the next frame, false to stop the clock
+         */
+        boolean doFrame(long frameTimeMillis);
+    }
+
+    private final Callback callback;
+    private boolean running = false;
+    //Whether the ticker holds this clock; it drops stopped clocks on its next frame
+    boolean registered = false;
+    //The minimum time between callbacks, or 0 for every display frame
+    private long frameIntervalMillis = 0;
+    //The time of the previous callback since starting (or -1)
+    private long lastFrameMillis = -1;
+    //Optional frame timing
+    private WheelMetrics metrics;
+
+    FrameClock(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Request frames until the callback asks to stop. Does nothing if already running.
+     */
+    void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastFrameMillis = -1;
+        FrameTicker.getInstance().register(this);
+    }
+
+    /**
+     * Stop delivering frames
+     */
+    void stop() {
+        running = false;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Skip display frames so that callbacks are at least this far apart. Frames are still
+     * vsync aligned, so e.g. 33ms on a 60Hz display calls back on every other frame.
+     *
+     * @param frameIntervalMillis the interval, or 0 to call back on every frame
+     */
+    void setFrameInterval(long frameIntervalMillis) {
+        this.frameIntervalMillis = Math.max(0, frameIntervalMillis);
+    }
+
+    long getFrameInterval() {
+        return frameIntervalMillis;
+    }
+
+    void setMetrics(WheelMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void dispatchFrame(long frameTimeMillis) {
+        if (!running) {
+            return;
+        }
+        long interval = lastFrameMillis < 0 ? -1 : frameTimeMillis - lastFrameMillis;
+        //Half a frame of slack, as frame times jitter around the vsync
+        if (interval >= 0 && interval + FrameTicker.FRAME_DURATION / 2 < frameIntervalMillis) {
+            return;
+        }
+        lastFrameMillis = frameTimeMillis;
+        if (metrics != null) {
+            metrics.onFrame(interval, Math.max(frameIntervalMillis, FrameTicker.FRAME_DURATION));
+        }
+        if (!callback.doFrame(frameTimeMillis)) {
+            running = false;
+        }
+    }
+}
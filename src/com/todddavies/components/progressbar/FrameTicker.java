@@ -0,0 +1,125 @@
+package com.todddavies.components.progressbar;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * The process-wide animation ticker. Every running {@link FrameClock} is registered
+ * here, and a single frame callback advances all of them in one batch, so the number
+ * of pending frame callbacks doesn't grow with the number of spinning wheels.
+ * Uses the Choreographer (vsync aligned) where available and falls back to a Handler
+ * on the main looper on older platforms.
+ * <p/>
+ * Must only be used from the UI thread.
+ */
+abstract class FrameTicker {
+
+    //The nominal frame interval, used by the fallback ticker
+    static final long FRAME_DURATION = 1000 / 60;
+
+    private static FrameTicker instance;
+
+    private final ArrayList<FrameClock> clocks = new ArrayList<FrameClock>();
+    private boolean scheduled = false;
+
+    static FrameTicker getInstance() {
+        if (instance == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                instance = new ChoreographerTicker();
+            } else {
+                instance = new HandlerTicker();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Start delivering frames to a clock. The clock must already be marked as running.
+     */
+    void register(FrameClock clock) {
+        if (!clock.registered) {
+            clock.registered = true;
+            clocks.add(clock);
+        }
+        if (!scheduled) {
+            scheduled = true;
+            postFrame();
+        }
+    }
+
+    /**
+     * The number of clocks currently receiving frames, including ones stopped during the current frame
+     */
+    int getClockCount() {
+        return clocks.size();
+    }
+
+    void dispatchFrame(long frameTimeMillis) {
+        scheduled = false;
+        //Clocks started during this frame get their first callback on the next one
+        final int count = clocks.size();
+        for (int i = 0; i < count; i++) {
+            clocks.get(i).dispatchFrame(frameTimeMillis);
+        }
+        //Drop the clocks that stopped, in place, without disturbing the others
+        int kept = 0;
+        for (int i = 0; i < clocks.size(); i++) {
+            FrameClock clock = clocks.get(i);
+            if (clock.isRunning()) {
+                clocks.set(kept++, clock);
+            } else {
+                clock.registered = false;
+            }
+        }
+        for (int i = clocks.size() - 1; i >= kept; i--) {
+            clocks.remove(i);
+        }
+        if (kept > 0 && !scheduled) {
+            scheduled = true;
+            postFrame();
+        }
+    }
+
+    abstract void postFrame();
+
+    /**
+     * Vsync aligned ticker for Jelly Bean and above
+     */
+    private static class ChoreographerTicker extends FrameTicker implements Choreographer.FrameCallback {
+
+        private final Choreographer choreographer = Choreographer.getInstance();
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            dispatchFrame(frameTimeNanos / 1000000);
+        }
+
+        @Override
+        void postFrame() {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Fixed rate ticker for platforms without a Choreographer
+     */
+    private static class HandlerTicker extends FrameTicker implements Runnable {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void run() {
+            dispatchFrame(SystemClock.uptimeMillis());
+        }
+
+        @Override
+        void postFrame() {
+            handler.postDelayed(this, FRAME_DURATION);
+        }
+    }
+}
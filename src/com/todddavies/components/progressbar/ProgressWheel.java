@@ -1,16 +1,31 @@
 package com.todddavies.components.progressbar;
 
+import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
+import android.os.Build;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.view.animation.LinearInterpolator;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -24,22 +39,30 @@ import android.view.View;
  */
 public class ProgressWheel extends View {
 
+    //Layout and animation state
+    private final ProgressWheelEngine engine = new ProgressWheelEngine();
+
     //Sizes (with defaults)
     private int layout_height = 0;
     private int layout_width = 0;
-    private int fullRadius = 100;
-    private int circleRadius = 80;
-    private int barLength = 60;
-    private int barWidth = 20;
-    private int rimWidth = 20;
     private int textSize = 20;
-    private float contourSize = 0;
 
-    //Padding (with defaults)
+    //The diameter of the content as of the last measure, and the specs it was measured with
+    private boolean measuredDiameterValid = false;
+    private int measuredDiameter;
+    private int measuredWidthSpec;
+    private int measuredHeightSpec;
+
+    //Padding (with defaults), centred in the view by setupBounds
     private int paddingTop = 5;
     private int paddingBottom = 5;
     private int paddingLeft = 5;
     private int paddingRight = 5;
+    //The padding as set, before centring
+    private int requestedPaddingTop = 5;
+    private int requestedPaddingBottom = 5;
+    private int requestedPaddingLeft = 5;
+    private int requestedPaddingRight = 5;
 
     //Colors (with defaults)
     private int barColor = 0xAA000000;
@@ -54,6 +77,12 @@ public class ProgressWheel extends View {
     private Paint rimPaint = new Paint();
     private Paint textPaint = new Paint();
     private Paint contourPaint = new Paint();
+    //Whether each paint leaves a mark, so that invisible primitives aren't drawn at all
+    private boolean barVisible = true;
+    private boolean rimVisible = true;
+    private boolean circleVisible = true;
+    private boolean textVisible = true;
+    private boolean contourVisible = true;
 
     //Rectangles
     @SuppressWarnings("unused")
@@ -61,36 +90,165 @@ public class ProgressWheel extends View {
     private RectF circleBounds = new RectF();
     private RectF circleOuterContour = new RectF();
     private RectF circleInnerContour = new RectF();
+    //The area to redraw when only the bar moves
+    private final RectF barDirtyBounds = new RectF();
+    private final Rect barDirtyRect = new Rect();
+
+    //Static layer cache (rim and contours, which are drawn under the bar)
+    private boolean staticLayerCacheEnabled = false;
+    private Bitmap staticLayer;
+    private boolean staticLayerValid = false;
+
+    //Setters only mark what they change as stale; it is recomputed once, before the next draw
+    private boolean boundsDirty = false;
+    private boolean paintsDirty = false;
+    private boolean textDirty = false;
+
+    //Pre-rendered spin frames, shared with identically styled wheels
+    private boolean spriteCacheEnabled = false;
+    private SpriteSheetCache.Key spriteKey;
+    private boolean drawingSprites = false;
+    private final SpriteSheetCache.FrameRenderer spriteRenderer = new SpriteSheetCache.FrameRenderer() {
+        @Override
+        public void renderFrame(Canvas canvas, int progress) {
+            drawRim(canvas);
+            drawSpinningBar(canvas, progress);
+            drawInnerCircle(canvas);
+        }
+    };
+
+    //Optional frame timing
+    private WheelMetrics metrics;
+
+    //Spinning by rotating the whole view instead of redrawing it, see setRotationSpinEnabled
+    private boolean rotationSpinEnabled = false;
+    private RotationSpin rotationSpin;
 
     //Animation
-    //The amount of pixels to move the bar by on each draw
-    private int spinSpeed = 2;
-    //The number of milliseconds to wait inbetween each draw
-    private int delayMillis = 0;
-    private Handler spinHandler = new Handler() {
+    private final FrameClock frameClock = new FrameClock(new FrameClock.Callback() {
         /**
          * This is the code that will increment the progress variable
-         * and so spin the wheel
+         * and so spin the wheel, at most once per display frame
          */
         @Override
-        public void handleMessage(Message msg) {
-            invalidate();
-            if (isSpinning) {
-                progress += spinSpeed;
-                if (progress > 360) {
-                    progress = 0;
+        public boolean doFrame(long frameTimeMillis) {
+            float oldProgress = engine.getProgress();
+            boolean wasSpinning = engine.isSpinning();
+            //Apply the latest progress posted from any thread since the last frame
+            if (progressUpdatePending.getAndSet(false)) {
+                long latest = latestProgress.get();
+                float degrees = engine.degreesFor(valueOf(latest));
+                engine.stopSpinning();
+                if ((latest & ANIMATE_PROGRESS) != 0) {
+                    //Chase the new target from wherever the bar is now
+                    progressFrom = engine.getProgress();
+                    progressTarget = degrees;
+                    progressAnimationStart = frameTimeMillis;
+                    animatingProgress = true;
+                } else {
+                    animatingProgress = false;
+                    engine.setProgress(degrees);
+                }
+            }
+            if (animatingProgress) {
+                stepProgressAnimation(frameTimeMillis);
+            }
+            engine.step(frameTimeMillis);
+            if (engine.isSpinning() != wasSpinning) {
+                //A progress update ended the spin, which may have been turning the whole view
+                stopRotationSpin();
+                if (metrics != null) {
+                    metrics.onInvalidate();
+                }
+                invalidate();
+            } else if (engine.isSpinning()) {
+                if (!drawingSprites) {
+                    if (engine.getProgress() != oldProgress) {
+                        invalidateBar(oldProgress, engine.getProgress());
+                    }
+                } else if (SpriteSheetCache.frameIndex(oldProgress) != SpriteSheetCache.frameIndex(engine.getProgress())) {
+                    //Sprites only change when the bar reaches the next frame, and then the
+                    //whole bitmap is replaced; the bar's exact angles don't match the frame's
+                    if (metrics != null) {
+                        metrics.onInvalidate();
+                    }
+                    invalidate();
                 }
-                spinHandler.sendEmptyMessageDelayed(0, delayMillis);
+            } else if (engine.isVisibleChange(drawnProgress, engine.getProgress())
+                    || showPercentage && percentFor(drawnProgress) != percentFor(engine.getProgress())) {
+                //Changes that don't move the end of the bar by a pixel wait until they add up
+                invalidateBar(drawnProgress, engine.getProgress());
             }
-            //super.handleMessage(msg);
+            return engine.isSpinning() || animatingProgress;
+        }
+    });
+
+    //Progress updates, which may come from any thread and are applied on the next frame.
+    //latestProgress holds the bits of the float value, plus ANIMATE_PROGRESS when the bar should ease to it.
+    private static final long ANIMATE_PROGRESS = 1L << 32;
+    private final AtomicLong latestProgress = new AtomicLong();
+    private volatile float max = 360;
+    //The sweep of the bar when it was last drawn
+    private float drawnProgress = 0;
+    private final AtomicBoolean progressUpdatePending = new AtomicBoolean();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable requestFrame = new Runnable() {
+        @Override
+        public void run() {
+            frameClock.start();
         }
     };
-    int progress = 0;
-    boolean isSpinning = false;
+
+    //Eased progress, stepped by the frame clock on the UI thread
+    private static final int DEFAULT_PROGRESS_ANIMATION_DURATION = 300;
+    private Interpolator progressInterpolator = new DecelerateInterpolator();
+    private int progressAnimationDuration = DEFAULT_PROGRESS_ANIMATION_DURATION;
+    private boolean animatingProgress = false;
+    private float progressFrom = 0;
+    private float progressTarget = 0;
+    private long progressAnimationStart = 0;
+
+    //Lifecycle, the wheel only animates while attached, shown and on screen
+    private boolean attached = false;
+    private boolean temporarilyDetached = false;
+    private boolean offScreen = false;
+    private final Rect visibleRect = new Rect();
+    private final ViewTreeObserver.OnScrollChangedListener scrollListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    boolean wasOffScreen = offScreen;
+                    offScreen = !getGlobalVisibleRect(visibleRect);
+                    if (offScreen != wasOffScreen) {
+                        updateAnimationState();
+                    }
+                }
+            };
+
+    //Percentage label, see setShowPercentage. Formatted into a reused buffer rather than
+    //a String, and each of the 101 labels is only measured once per text size (0 until then).
+    private boolean showPercentage = false;
+    private final char[] percentageChars = new char[4];
+    private final float[] percentageWidths = new float[101];
 
     //Other
     private String text = "";
-    private String[] splitText = {};
+    private final TextLayoutCache.Font font = new TextLayoutCache.Font() {
+        @Override
+        public float measureText(String text) {
+            return textPaint.measureText(text);
+        }
+
+        @Override
+        public float ascent() {
+            return textPaint.ascent();
+        }
+
+        @Override
+        public float descent() {
+            return textPaint.descent();
+        }
+    };
 
     /**
      * The constructor for the ProgressWheel
@@ -103,12 +261,207 @@ public class ProgressWheel extends View {
 
         parseAttributes(context.obtainStyledAttributes(attrs,
                 R.styleable.ProgressWheel));
+        updateTextLayout();
     }
 
     //----------------------------------
     //Setting up stuff
     //----------------------------------
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        attached = true;
+        offScreen = false;
+        getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+        updateAnimationState();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(scrollListener);
+        attached = false;
+        updateAnimationState();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void onStartTemporaryDetach() {
+        super.onStartTemporaryDetach();
+        temporarilyDetached = true;
+        updateAnimationState();
+    }
+
+    @Override
+    public void onFinishTemporaryDetach() {
+        super.onFinishTemporaryDetach();
+        temporarilyDetached = false;
+        updateAnimationState();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateAnimationState();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateAnimationState();
+    }
+
+    /**
+     * Suspend or resume the animation, so that a spinning wheel only receives frames
+     * while it can actually be seen. Spinning at spinRate resumes in phase, as the
+     * angle is derived from the time since spin() was called. A progress update
+     * waiting for its frame keeps the clock running, or restarts it once visible again.
+     */
+    private void updateAnimationState() {
+        //Can be called from the View constructor, before our fields are initialised
+        if (frameClock == null) {
+            return;
+        }
+        boolean visible = attached && !temporarilyDetached && !offScreen
+                && getWindowVisibility() == VISIBLE && isShown();
+        boolean rotating = visible && engine.isSpinning() && canSpinByRotation();
+        if (rotating) {
+            startRotationSpin();
+        } else {
+            stopRotationSpin();
+        }
+        if (visible && (engine.isSpinning() && !rotating || animatingProgress || progressUpdatePending.get())) {
+            frameClock.start();
+        } else {
+            frameClock.stop();
+        }
+    }
+
+    /**
+     * Whether the spin can be shown by rotating the view: the text would turn with it,
+     * view rotation needs Honeycomb, and the pivot is only known once the view has a size
+     */
+    private boolean canSpinByRotation() {
+        return rotationSpinEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && (showPercentage || engine.getTextLines().length == 0) && spinDegreesPerSecond() != 0
+                && layout_width > 0 && layout_height > 0;
+    }
+
+    /**
+     * The speed of the spin, whether it's set by spinRate or by spinSpeed per frame
+     */
+    private float spinDegreesPerSecond() {
+        if (engine.getSpinRate() != 0) {
+            return engine.getSpinRate();
+        }
+        long stepMillis = Math.max(engine.getDelayMillis(), FrameTicker.FRAME_DURATION);
+        return engine.getSpinSpeed() * 1000f / stepMillis;
+    }
+
+    private void startRotationSpin() {
+        if (rotationSpin == null) {
+            rotationSpin = new RotationSpin(this);
+        }
+        if (rotationSpin.isRunning()) {
+            return;
+        }
+        //Pick up where spinning at spinRate would be by now, and pivot around the circle
+        if (engine.getSpinRate() != 0) {
+            engine.setProgress(engine.angleAt(SystemClock.uptimeMillis()));
+        }
+        setupIfDirty();
+        rotationSpin.start((engine.getCircleLeft() + engine.getCircleRight()) / 2,
+                (engine.getCircleTop() + engine.getCircleBottom()) / 2, spinDegreesPerSecond());
+        invalidate();
+    }
+
+    /**
+     * Stop rotating the view, handing the angle it reached back to the bar
+     */
+    private void stopRotationSpin() {
+        if (rotationSpin == null || !rotationSpin.isRunning()) {
+            return;
+        }
+        float turned = rotationSpin.stop();
+        if (engine.isSpinning()) {
+            engine.setProgress(((engine.getProgress() + turned) % 360 + 360) % 360);
+            engine.startSpinning(SystemClock.uptimeMillis());
+        }
+        invalidate();
+    }
+
+    /**
+     * Apply a change to the spin speed to a running rotation
+     */
+    private void restartRotationSpin() {
+        stopRotationSpin();
+        updateAnimationState();
+    }
+
+    /**
+     * Ask for enough room to fit the text inside the bar and the rim, plus the padding,
+     * within the limits of the MeasureSpecs. The content size is kept until something
+     * it depends on changes (see invalidateMeasure); View.measure already skips this
+     * for repeated specs unless a layout is forced, so the result itself isn't memoised.
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (!measuredDiameterValid) {
+            measuredDiameter = measureDiameter();
+            measuredDiameterValid = true;
+        }
+        measuredWidthSpec = widthMeasureSpec;
+        measuredHeightSpec = heightMeasureSpec;
+        int width = Math.max(measuredDiameter + requestedPaddingLeft + requestedPaddingRight,
+                getSuggestedMinimumWidth());
+        int height = Math.max(measuredDiameter + requestedPaddingTop + requestedPaddingBottom,
+                getSuggestedMinimumHeight());
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    private int measureDiameter() {
+        return engine.measureDiameter();
+    }
+
+    /**
+     * Split and measure the text, or reuse the layout of the same text at the same
+     * size from the shared cache. Must be called whenever the text or its size changes.
+     */
+    private void updateTextLayout() {
+        //The text paint is only brought up to date before drawing, so set its size here
+        textPaint.setTextSize(textSize);
+        //The percentage is measured as it's drawn, but the wheel must be large enough for the widest one
+        String layoutText = showPercentage ? "100%" : text;
+        engine.setTextLayout(TextLayoutCache.getInstance().obtain(layoutText, textSize, textPaint.getTypeface(), font));
+        textDirty = true;
+    }
+
+    /**
+     * Lay the wheel out again after a change to something its size depends on, but only
+     * if its size depends on its content and the size asked for has actually changed.
+     * That way e.g. updating a percentage every frame doesn't cost a layout pass each time.
+     *
+     * @param paddingChanged true if the padding changed, which always changes the size asked for
+     */
+    private void invalidateMeasure(boolean paddingChanged) {
+        if (!measuredDiameterValid) {
+            //Not measured yet, or already to be measured again
+            return;
+        }
+        if (MeasureSpec.getMode(measuredWidthSpec) == MeasureSpec.EXACTLY
+                && MeasureSpec.getMode(measuredHeightSpec) == MeasureSpec.EXACTLY) {
+            //The size doesn't depend on the content, just measure it again next time
+            measuredDiameterValid = false;
+            return;
+        }
+        int diameter = measureDiameter();
+        if (!paddingChanged && diameter == measuredDiameter) {
+            return;
+        }
+        measuredDiameter = diameter;
+        requestLayout();
+    }
+
     /**
      * Use onSizeChanged instead of onAttachedToWindow to get the dimensions of the view,
      * because this method is called after measuring the dimensions of MATCH_PARENT & WRAP_CONTENT.
@@ -122,11 +475,48 @@ public class ProgressWheel extends View {
         layout_width = w;
         layout_height = h;
 
-        setupBounds();
-        setupPaints();
+        invalidateBounds();
+        //Pivot a running rotation around the new centre, or start it now that there is one
+        restartRotationSpin();
+    }
+
+    /**
+     * Mark the layout of the wheel as stale, along with the paints that depend on its sizes
+     */
+    private void invalidateBounds() {
+        boundsDirty = true;
+        invalidatePaints();
+    }
+
+    /**
+     * Mark the paints as stale, e.g. after a color or size change
+     */
+    private void invalidatePaints() {
+        paintsDirty = true;
         invalidate();
     }
 
+    /**
+     * Recompute whatever the setters have marked as stale since the last draw
+     */
+    private void setupIfDirty() {
+        if (!boundsDirty && !paintsDirty && !textDirty) {
+            return;
+        }
+        if (boundsDirty) {
+            setupBounds();
+        }
+        if (paintsDirty) {
+            setupPaints();
+            staticLayerValid = false;
+            spriteKey = null;
+        }
+        setupTextMetrics();
+        boundsDirty = false;
+        paintsDirty = false;
+        textDirty = false;
+    }
+
     /**
      * Set the properties of the paints we're using to
      * draw the progress wheel
@@ -135,12 +525,12 @@ public class ProgressWheel extends View {
         barPaint.setColor(barColor);
         barPaint.setAntiAlias(true);
         barPaint.setStyle(Style.STROKE);
-        barPaint.setStrokeWidth(barWidth);
+        barPaint.setStrokeWidth(engine.getBarWidth());
 
         rimPaint.setColor(rimColor);
         rimPaint.setAntiAlias(true);
         rimPaint.setStyle(Style.STROKE);
-        rimPaint.setStrokeWidth(rimWidth);
+        rimPaint.setStrokeWidth(engine.getRimWidth());
 
         circlePaint.setColor(circleColor);
         circlePaint.setAntiAlias(true);
@@ -154,40 +544,46 @@ public class ProgressWheel extends View {
         contourPaint.setColor(contourColor);
         contourPaint.setAntiAlias(true);
         contourPaint.setStyle(Style.STROKE);
-        contourPaint.setStrokeWidth(contourSize);
+        contourPaint.setStrokeWidth(engine.getContourSize());
+
+        //A zero stroke width is still a hairline, so only a transparent color hides a primitive
+        barVisible = barPaint.getAlpha() != 0;
+        rimVisible = rimPaint.getAlpha() != 0;
+        circleVisible = circlePaint.getAlpha() != 0;
+        textVisible = textPaint.getAlpha() != 0;
+        contourVisible = contourPaint.getAlpha() != 0;
+
+        Arrays.fill(percentageWidths, 0);
     }
 
     /**
      * Set the bounds of the component
      */
     private void setupBounds() {
-        // Width should equal to Height, find the min value to steup the circle
-        int minValue = Math.min(layout_width, layout_height);
-
-        // Calc the Offset if needed
-        int xOffset = layout_width - minValue;
-        int yOffset = layout_height - minValue;
-
-        // Add the offset
-        paddingTop = this.getPaddingTop() + (yOffset / 2);
-        paddingBottom = this.getPaddingBottom() + (yOffset / 2);
-        paddingLeft = this.getPaddingLeft() + (xOffset / 2);
-        paddingRight = this.getPaddingRight() + (xOffset / 2);
-
-        rectBounds = new RectF(paddingLeft,
-                paddingTop,
-                this.getLayoutParams().width - paddingRight,
-                this.getLayoutParams().height - paddingBottom);
-
-        circleBounds = new RectF(paddingLeft + barWidth,
-                paddingTop + barWidth,
-                this.getLayoutParams().width - paddingRight - barWidth,
-                this.getLayoutParams().height - paddingBottom - barWidth);
-        circleInnerContour = new RectF(circleBounds.left + (rimWidth / 2.0f) + (contourSize / 2.0f), circleBounds.top + (rimWidth / 2.0f) + (contourSize / 2.0f), circleBounds.right - (rimWidth / 2.0f) - (contourSize / 2.0f), circleBounds.bottom - (rimWidth / 2.0f) - (contourSize / 2.0f));
-        circleOuterContour = new RectF(circleBounds.left - (rimWidth / 2.0f) - (contourSize / 2.0f), circleBounds.top - (rimWidth / 2.0f) - (contourSize / 2.0f), circleBounds.right + (rimWidth / 2.0f) + (contourSize / 2.0f), circleBounds.bottom + (rimWidth / 2.0f) + (contourSize / 2.0f));
+        engine.setupBounds(layout_width, layout_height,
+                requestedPaddingLeft, requestedPaddingTop,
+                requestedPaddingRight, requestedPaddingBottom);
+        paddingTop = engine.getPaddingTop();
+        paddingBottom = engine.getPaddingBottom();
+        paddingLeft = engine.getPaddingLeft();
+        paddingRight = engine.getPaddingRight();
+
+        rectBounds.set(engine.getRectLeft(), engine.getRectTop(),
+                engine.getRectRight(), engine.getRectBottom());
+        circleBounds.set(engine.getCircleLeft(), engine.getCircleTop(),
+                engine.getCircleRight(), engine.getCircleBottom());
+        circleInnerContour.set(engine.getInnerContourLeft(), engine.getInnerContourTop(),
+                engine.getInnerContourRight(), engine.getInnerContourBottom());
+        circleOuterContour.set(engine.getOuterContourLeft(), engine.getOuterContourTop(),
+                engine.getOuterContourRight(), engine.getOuterContourBottom());
+    }
 
-        fullRadius = (this.getLayoutParams().width - paddingRight - barWidth) / 2;
-        circleRadius = (fullRadius - barWidth) + 1;
+    /**
+     * Position the text lines so that the draw pass doesn't have to measure them.
+     * Must be called whenever the text, the text paint or the size changes.
+     */
+    private void setupTextMetrics() {
+        engine.positionText();
     }
 
     /**
@@ -196,25 +592,26 @@ public class ProgressWheel extends View {
      * @param a the attributes to parse
      */
     private void parseAttributes(TypedArray a) {
-        barWidth = (int) a.getDimension(R.styleable.ProgressWheel_barWidth,
-                barWidth);
+        engine.setBarWidth((int) a.getDimension(R.styleable.ProgressWheel_barWidth,
+                engine.getBarWidth()));
 
-        rimWidth = (int) a.getDimension(R.styleable.ProgressWheel_rimWidth,
-                rimWidth);
+        engine.setRimWidth((int) a.getDimension(R.styleable.ProgressWheel_rimWidth,
+                engine.getRimWidth()));
 
-        spinSpeed = (int) a.getDimension(R.styleable.ProgressWheel_spinSpeed,
-                spinSpeed);
+        engine.setSpinSpeed((int) a.getDimension(R.styleable.ProgressWheel_spinSpeed,
+                engine.getSpinSpeed()));
 
-        delayMillis = a.getInteger(R.styleable.ProgressWheel_delayMillis,
-                delayMillis);
-        if (delayMillis < 0) {
-            delayMillis = 0;
-        }
+        engine.setSpinRate(a.getFloat(R.styleable.ProgressWheel_spinRate,
+                engine.getSpinRate()), SystemClock.uptimeMillis());
+
+        //Negative delays are treated as 0
+        engine.setDelayMillis(a.getInteger(R.styleable.ProgressWheel_delayMillis,
+                engine.getDelayMillis()));
 
         barColor = a.getColor(R.styleable.ProgressWheel_barColor, barColor);
 
-        barLength = (int) a.getDimension(R.styleable.ProgressWheel_barLength,
-                barLength);
+        engine.setBarLength((int) a.getDimension(R.styleable.ProgressWheel_barLength,
+                engine.getBarLength()));
 
         textSize = (int) a.getDimension(R.styleable.ProgressWheel_textSize,
                 textSize);
@@ -234,7 +631,8 @@ public class ProgressWheel extends View {
                 circleColor);
 
         contourColor = a.getColor(R.styleable.ProgressWheel_contourColor, contourColor);
-        contourSize = a.getDimension(R.styleable.ProgressWheel_contourSize, contourSize);
+        engine.setContourSize(a.getDimension(R.styleable.ProgressWheel_contourSize,
+                engine.getContourSize()));
 
 
         // Recycle
@@ -247,50 +645,198 @@ public class ProgressWheel extends View {
 
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        //Draw the rim
-        canvas.drawArc(circleBounds, 360, 360, false, rimPaint);
-        canvas.drawArc(circleOuterContour, 360, 360, false, contourPaint);
-        canvas.drawArc(circleInnerContour, 360, 360, false, contourPaint);
-        //Draw the bar
-        if (isSpinning) {
-            canvas.drawArc(circleBounds, progress - 90, barLength, false,
-                    barPaint);
+        setupIfDirty();
+        drawnProgress = engine.getProgress();
+        final long drawStart = metrics != null ? System.nanoTime() : 0;
+        SpriteSheetCache.Sheet sprites = getSpriteSheet();
+        drawingSprites = sprites != null;
+        if (drawingSprites) {
+            //The whole wheel, pre-rendered at the nearest frame
+            int frame = SpriteSheetCache.frameIndex(engine.getProgress());
+            canvas.drawBitmap(sprites.getFrame(frame, spriteRenderer), 0, 0, null);
+        } else if (staticLayerCacheEnabled && layout_width > 0 && layout_height > 0) {
+            //Composite the cached rim, then the bar and the inner circle on top, as drawn directly
+            if (rimVisible || contourVisible) {
+                canvas.drawBitmap(getStaticLayer(), 0, 0, null);
+            }
+            drawBar(canvas);
+            drawInnerCircle(canvas);
+        } else {
+            drawRim(canvas);
+            drawBar(canvas);
+            drawInnerCircle(canvas);
+        }
+        //Draw the text (positions are measured in setupTextMetrics)
+        if (showPercentage) {
+            if (textVisible && !engine.isSpinning()) {
+                drawPercentage(canvas, engine.getProgress());
+            }
+        } else if (textVisible) {
+            String[] lines = engine.getTextLines();
+            float[] lineX = engine.getTextLineX();
+            for (int i = 0; i < lines.length; i++) {
+                canvas.drawText(lines[i], lineX[i], engine.getTextBaselineY(), textPaint);
+            }
+        }
+        if (metrics != null) {
+            metrics.onDraw(System.nanoTime() - drawStart);
+        }
+    }
+
+    //Each primitive is skipped if its paint is fully transparent, see setupPaints
+    private void drawRim(Canvas canvas) {
+        if (rimVisible) {
+            canvas.drawArc(circleBounds, 360, 360, false, rimPaint);
+        }
+        if (contourVisible) {
+            canvas.drawArc(circleOuterContour, 360, 360, false, contourPaint);
+            canvas.drawArc(circleInnerContour, 360, 360, false, contourPaint);
+        }
+    }
+
+    private void drawBar(Canvas canvas) {
+        if (!barVisible) {
+            return;
+        }
+        if (engine.isSpinning()) {
+            drawSpinningBar(canvas, engine.getProgress());
         } else {
-            canvas.drawArc(circleBounds, -90, progress, false, barPaint);
+            canvas.drawArc(circleBounds, -90, engine.getProgress(), false, barPaint);
         }
-        //Draw the inner circle
-        canvas.drawCircle((circleBounds.width() / 2) + rimWidth + paddingLeft,
-                (circleBounds.height() / 2) + rimWidth + paddingTop,
-                circleRadius,
-                circlePaint);
-        //Draw the text (attempts to center it horizontally and vertically)
-        float textHeight = textPaint.descent() - textPaint.ascent();
-        float verticalTextOffset = (textHeight / 2) - textPaint.descent();
+    }
 
-        for (String s : splitText) {
-            float horizontalTextOffset = textPaint.measureText(s) / 2;
-            canvas.drawText(s, this.getWidth() / 2 - horizontalTextOffset,
-                    this.getHeight() / 2 + verticalTextOffset, textPaint);
+    private void drawSpinningBar(Canvas canvas, float progress) {
+        if (barVisible) {
+            canvas.drawArc(circleBounds, progress - 90, engine.getBarLength(), false, barPaint);
         }
     }
 
+    private void drawInnerCircle(Canvas canvas) {
+        if (circleVisible) {
+            canvas.drawCircle(engine.getCircleCenterX(), engine.getCircleCenterY(),
+                    engine.getCircleRadius(), circlePaint);
+        }
+    }
+
+    /**
+     * Draw the percentage for a progress in the middle of the wheel, without allocating
+     */
+    private void drawPercentage(Canvas canvas, float progress) {
+        int percent = percentFor(progress);
+        int length = formatPercentage(percent);
+        float width = percentageWidths[percent];
+        if (width == 0) {
+            width = textPaint.measureText(percentageChars, 0, length);
+            percentageWidths[percent] = width;
+        }
+        canvas.drawText(percentageChars, 0, length, layout_width / 2 - width / 2,
+                engine.getTextBaselineY(), textPaint);
+    }
+
+    /**
+     * The whole percentage shown for a progress
+     *
+     * @param progress the progress in degrees, out of 360
+     */
+    private static int percentFor(float progress) {
+        int percent = Math.round(progress * 100 / 360);
+        return Math.max(0, Math.min(100, percent));
+    }
+
+    /**
+     * Write a percentage, e.g. "42%", into percentageChars
+     *
+     * @param percent the percentage, from 0 to 100
+     * @return the number of chars written
+     */
+    private int formatPercentage(int percent) {
+        int digits = percent >= 100 ? 3 : percent >= 10 ? 2 : 1;
+        for (int i = digits - 1; i >= 0; i--) {
+            percentageChars[i] = (char) ('0' + percent % 10);
+            percent /= 10;
+        }
+        percentageChars[digits] = '%';
+        return digits + 1;
+    }
+
+    /**
+     * Invalidate only the area covered by the bar at its old and new positions,
+     * and the middle of the wheel if the percentage shown changes
+     */
+    private void invalidateBar(float oldProgress, float newProgress) {
+        engine.computeBarDirtyBounds(oldProgress, newProgress);
+        barDirtyBounds.set(engine.getDirtyLeft(), engine.getDirtyTop(),
+                engine.getDirtyRight(), engine.getDirtyBottom());
+        if (showPercentage && percentFor(oldProgress) != percentFor(newProgress)) {
+            barDirtyBounds.union(circleInnerContour);
+        }
+        barDirtyBounds.roundOut(barDirtyRect);
+        if (metrics != null) {
+            metrics.onInvalidate();
+        }
+        invalidate(barDirtyRect);
+    }
+
+    /**
+     * Get the bitmap holding the rim and contours,
+     * re-rendering it only if the size or the paints have changed
+     */
+    private Bitmap getStaticLayer() {
+        if (staticLayerValid) {
+            return staticLayer;
+        }
+        if (staticLayer != null && staticLayer.getWidth() == layout_width
+                && staticLayer.getHeight() == layout_height) {
+            staticLayer.eraseColor(0);
+        } else {
+            releaseStaticLayer();
+            staticLayer = Bitmap.createBitmap(layout_width, layout_height, Bitmap.Config.ARGB_8888);
+        }
+        Canvas layerCanvas = new Canvas(staticLayer);
+        drawRim(layerCanvas);
+        staticLayerValid = true;
+        return staticLayer;
+    }
+
+    /**
+     * Get the spin frames for the current size and paints,
+     * or null if the wheel should be drawn directly
+     */
+    private SpriteSheetCache.Sheet getSpriteSheet() {
+        if (!spriteCacheEnabled || !engine.isSpinning()) {
+            return null;
+        }
+        if (spriteKey == null) {
+            spriteKey = SpriteSheetCache.keyFor(layout_width, layout_height, engine,
+                    rimPaint, contourPaint, barPaint, circlePaint);
+        }
+        return SpriteSheetCache.getInstance().obtain(spriteKey);
+    }
+
+    private void releaseStaticLayer() {
+        if (staticLayer != null) {
+            staticLayer.recycle();
+            staticLayer = null;
+        }
+        staticLayerValid = false;
+    }
+
     /**
     *   Check if the wheel is currently spinning
     */
     
     public boolean isSpinning() {
-        if(isSpinning){
-            return true;
-        } else {
-            return false;
-        }
+        return engine.isSpinning();
     }
     
     /**
      * Reset the count (in increment mode)
      */
     public void resetCount() {
-        progress = 0;
+        progressUpdatePending.set(false);
+        animatingProgress = false;
+        latestProgress.set(0);
+        engine.setProgress(0);
         setText("0%");
         invalidate();
     }
@@ -299,9 +845,14 @@ public class ProgressWheel extends View {
      * Turn off spin mode
      */
     public void stopSpinning() {
-        isSpinning = false;
-        progress = 0;
-        spinHandler.removeMessages(0);
+        engine.stopSpinning();
+        progressUpdatePending.set(false);
+        animatingProgress = false;
+        latestProgress.set(0);
+        engine.setProgress(0);
+        frameClock.stop();
+        stopRotationSpin();
+        invalidate();
     }
 
 
@@ -309,30 +860,135 @@ public class ProgressWheel extends View {
      * Puts the view on spin mode
      */
     public void spin() {
-        isSpinning = true;
-        spinHandler.sendEmptyMessage(0);
+        progressUpdatePending.set(false);
+        animatingProgress = false;
+        engine.startSpinning(SystemClock.uptimeMillis());
+        updateAnimationState();
+        invalidate();
     }
 
     /**
-     * Increment the progress by 1 (of 360)
+     * Increment the progress by 1 (of max, 360 by default)
+     * Can be called from any thread, see {@link #setProgress(float)}
      */
     public void incrementProgress() {
-        isSpinning = false;
-        progress++;
-        if (progress > 360)
-            progress = 0;
-//        setText(Math.round(((float) progress / 360) * 100) + "%");
-        spinHandler.sendEmptyMessage(0);
+        long current;
+        float next;
+        do {
+            current = latestProgress.get();
+            next = valueOf(current) + 1;
+            if (next > max)
+                next = 0;
+        } while (!latestProgress.compareAndSet(current, pack(next, false)));
+        //See setShowPercentage for a label that follows the progress
+        requestProgressUpdate();
     }
 
 
     /**
-     * Set the progress to a specific value
+     * Set the progress to a specific value, leaving spin mode.
+     * Can be called from any thread: any number of updates between two frames
+     * are coalesced, and the next frame draws the most recent value.
+     *
+     * @param i the progress, out of max (360 by default)
      */
     public void setProgress(int i) {
-        isSpinning = false;
-        progress = i;
-        spinHandler.sendEmptyMessage(0);
+        setProgress((float) i, false);
+    }
+
+    /**
+     * See {@link #setProgress(float, boolean)}
+     */
+    public void setProgress(int i, boolean animate) {
+        setProgress((float) i, animate);
+    }
+
+    /**
+     * Set the progress to a specific value, leaving spin mode. Fractions of a degree
+     * are drawn, and updates too small to move the bar by a pixel aren't redrawn
+     * until they add up. Can be called from any thread, see {@link #setProgress(int)}.
+     *
+     * @param progress the progress, out of max (360 by default)
+     */
+    public void setProgress(float progress) {
+        setProgress(progress, false);
+    }
+
+    /**
+     * Set the progress to a specific value, leaving spin mode, optionally easing
+     * the bar towards it with the progress interpolator. A new target given while
+     * the bar is still moving is chased from wherever the bar has got to.
+     * Can be called from any thread, see {@link #setProgress(int)}.
+     *
+     * @param progress the progress, out of max (360 by default)
+     * @param animate  true to ease the bar to the new value instead of jumping to it
+     */
+    public void setProgress(float progress, boolean animate) {
+        latestProgress.set(pack(progress, animate));
+        requestProgressUpdate();
+    }
+
+    /**
+     * @return the latest progress set, out of max
+     */
+    public float getProgress() {
+        return valueOf(latestProgress.get());
+    }
+
+    /**
+     * Set the progress that fills the whole circle, like ProgressBar.setMax().
+     * Must be called from the UI thread.
+     *
+     * @param max the maximum progress, 360 by default so that progress is in degrees
+     */
+    public void setMax(float max) {
+        this.max = max;
+        engine.setMax(max);
+        if (!engine.isSpinning()) {
+            //Rescale the bar to the new max
+            requestProgressUpdate();
+        }
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    private static long pack(float progress, boolean animate) {
+        long bits = Float.floatToIntBits(progress) & 0xFFFFFFFFL;
+        return animate ? bits | ANIMATE_PROGRESS : bits;
+    }
+
+    private static float valueOf(long packedProgress) {
+        return Float.intBitsToFloat((int) packedProgress);
+    }
+
+    /**
+     * Move the eased bar to its position at the given frame time
+     */
+    private void stepProgressAnimation(long frameTimeMillis) {
+        long elapsed = frameTimeMillis - progressAnimationStart;
+        if (elapsed >= progressAnimationDuration) {
+            engine.setProgress(progressTarget);
+            animatingProgress = false;
+            return;
+        }
+        float fraction = progressInterpolator.getInterpolation((float) elapsed / progressAnimationDuration);
+        engine.setProgress(progressFrom + (progressTarget - progressFrom) * fraction);
+    }
+
+    /**
+     * Make sure a frame will apply the latest progress, posting at most
+     * one message per frame however many updates arrive
+     */
+    private void requestProgressUpdate() {
+        if (progressUpdatePending.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                frameClock.start();
+            } else {
+                mainHandler.post(requestFrame);
+            }
+        }
     }
 
     //----------------------------------
@@ -346,32 +1002,41 @@ public class ProgressWheel extends View {
      * @param text the text to show ('\n' constitutes a new line)
      */
     public void setText(String text) {
+        if (TextUtils.equals(text, this.text)) {
+            return;
+        }
         this.text = text;
-        splitText = this.text.split("\n");
+        updateTextLayout();
+        invalidateMeasure(false);
+        updateAnimationState();
     }
 
     public int getCircleRadius() {
-        return circleRadius;
+        return engine.getCircleRadius();
     }
 
     public void setCircleRadius(int circleRadius) {
-        this.circleRadius = circleRadius;
+        engine.setCircleRadius(circleRadius);
+        invalidatePaints();
     }
 
     public int getBarLength() {
-        return barLength;
+        return engine.getBarLength();
     }
 
     public void setBarLength(int barLength) {
-        this.barLength = barLength;
+        engine.setBarLength(barLength);
+        invalidatePaints();
     }
 
     public int getBarWidth() {
-        return barWidth;
+        return engine.getBarWidth();
     }
 
     public void setBarWidth(int barWidth) {
-        this.barWidth = barWidth;
+        engine.setBarWidth(barWidth);
+        invalidateBounds();
+        invalidateMeasure(false);
     }
 
     public int getTextSize() {
@@ -380,6 +1045,9 @@ public class ProgressWheel extends View {
 
     public void setTextSize(int textSize) {
         this.textSize = textSize;
+        updateTextLayout();
+        invalidatePaints();
+        invalidateMeasure(false);
     }
 
     public int getPaddingTop() {
@@ -388,6 +1056,9 @@ public class ProgressWheel extends View {
 
     public void setPaddingTop(int paddingTop) {
         this.paddingTop = paddingTop;
+        this.requestedPaddingTop = paddingTop;
+        invalidateBounds();
+        invalidateMeasure(true);
     }
 
     public int getPaddingBottom() {
@@ -396,6 +1067,9 @@ public class ProgressWheel extends View {
 
     public void setPaddingBottom(int paddingBottom) {
         this.paddingBottom = paddingBottom;
+        this.requestedPaddingBottom = paddingBottom;
+        invalidateBounds();
+        invalidateMeasure(true);
     }
 
     public int getPaddingLeft() {
@@ -404,6 +1078,9 @@ public class ProgressWheel extends View {
 
     public void setPaddingLeft(int paddingLeft) {
         this.paddingLeft = paddingLeft;
+        this.requestedPaddingLeft = paddingLeft;
+        invalidateBounds();
+        invalidateMeasure(true);
     }
 
     public int getPaddingRight() {
@@ -412,6 +1089,9 @@ public class ProgressWheel extends View {
 
     public void setPaddingRight(int paddingRight) {
         this.paddingRight = paddingRight;
+        this.requestedPaddingRight = paddingRight;
+        invalidateBounds();
+        invalidateMeasure(true);
     }
 
     public int getBarColor() {
@@ -420,6 +1100,7 @@ public class ProgressWheel extends View {
 
     public void setBarColor(int barColor) {
         this.barColor = barColor;
+        invalidatePaints();
     }
 
     public int getCircleColor() {
@@ -428,6 +1109,7 @@ public class ProgressWheel extends View {
 
     public void setCircleColor(int circleColor) {
         this.circleColor = circleColor;
+        invalidatePaints();
     }
 
     public int getRimColor() {
@@ -436,6 +1118,7 @@ public class ProgressWheel extends View {
 
     public void setRimColor(int rimColor) {
         this.rimColor = rimColor;
+        invalidatePaints();
     }
 
 
@@ -445,6 +1128,123 @@ public class ProgressWheel extends View {
 
     public void setRimShader(Shader shader) {
         this.rimPaint.setShader(shader);
+        staticLayerValid = false;
+        spriteKey = null;
+        invalidate();
+    }
+
+    public boolean isStaticLayerCacheEnabled() {
+        return staticLayerCacheEnabled;
+    }
+
+    /**
+     * Render the parts of the wheel that don't move and lie under the bar (the rim
+     * and the contours) once into an offscreen bitmap, so that each animated frame
+     * only draws the bar and the inner circle on top of it. Costs one ARGB bitmap the size of the view.
+     *
+     * @param enabled true to cache the static layer
+     */
+    public void setStaticLayerCacheEnabled(boolean enabled) {
+        this.staticLayerCacheEnabled = enabled;
+        if (!enabled) {
+            releaseStaticLayer();
+        }
+        invalidate();
+    }
+
+    public boolean isSpriteCacheEnabled() {
+        return spriteCacheEnabled;
+    }
+
+    /**
+     * Draw the spinning wheel from pre-rendered frames, one for every
+     * {@code 360 / SpriteSheetCache.FRAME_COUNT} degrees, instead of drawing the arcs on every frame.
+     * The frames are shared by all the wheels with the same size and paints, and are
+     * dropped when the cache runs over its memory budget. The text is still drawn on top.
+     *
+     * @param enabled true to replay pre-rendered frames while spinning
+     */
+    public void setSpriteCacheEnabled(boolean enabled) {
+        this.spriteCacheEnabled = enabled;
+        invalidate();
+    }
+
+    public boolean isShowPercentage() {
+        return showPercentage;
+    }
+
+    /**
+     * Show the progress as a percentage in the middle of the wheel, in place of the text,
+     * and nothing while spinning. Unlike calling setText on each update, the label is
+     * formatted into a reused buffer and needs no allocation however often the progress changes.
+     *
+     * @param showPercentage true to show the percentage instead of the text
+     */
+    public void setShowPercentage(boolean showPercentage) {
+        this.showPercentage = showPercentage;
+        updateTextLayout();
+        invalidateMeasure(false);
+        updateAnimationState();
+        invalidate();
+    }
+
+    public boolean isRotationSpinEnabled() {
+        return rotationSpinEnabled;
+    }
+
+    /**
+     * Spin by rotating the whole view with a property animator, instead of redrawing
+     * the bar at a new angle on every frame. With hardware acceleration the view's
+     * display list is then reused as is and onDraw doesn't run while spinning.
+     * Only used on Honeycomb and above, and while the wheel shows no text; otherwise
+     * the wheel spins as usual. The view's own rotation and pivot are restored when the spin stops.
+     *
+     * @param enabled true to spin by rotating the view
+     */
+    public void setRotationSpinEnabled(boolean enabled) {
+        this.rotationSpinEnabled = enabled;
+        updateAnimationState();
+    }
+
+    public WheelMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Interpolator getProgressInterpolator() {
+        return progressInterpolator;
+    }
+
+    /**
+     * Set the easing used by {@link #setProgress(float, boolean)}. Must be called from the UI thread.
+     *
+     * @param interpolator the easing, or null for the default deceleration
+     */
+    public void setProgressInterpolator(Interpolator interpolator) {
+        this.progressInterpolator = interpolator != null ? interpolator : new DecelerateInterpolator();
+    }
+
+    public int getProgressAnimationDuration() {
+        return progressAnimationDuration;
+    }
+
+    /**
+     * Set how long {@link #setProgress(float, boolean)} takes to reach a new value.
+     * Must be called from the UI thread.
+     *
+     * @param millis the duration in milliseconds
+     */
+    public void setProgressAnimationDuration(int millis) {
+        this.progressAnimationDuration = Math.max(0, millis);
+    }
+
+    /**
+     * Record frame timing into the given metrics, or stop recording
+     *
+     * @param metrics the metrics to record into, or null
+     */
+    public void setMetrics(WheelMetrics metrics) {
+        this.metrics = metrics;
+        frameClock.setMetrics(metrics);
     }
 
     public int getTextColor() {
@@ -453,29 +1253,101 @@ public class ProgressWheel extends View {
 
     public void setTextColor(int textColor) {
         this.textColor = textColor;
+        invalidatePaints();
     }
 
     public int getSpinSpeed() {
-        return spinSpeed;
+        return engine.getSpinSpeed();
     }
 
     public void setSpinSpeed(int spinSpeed) {
-        this.spinSpeed = spinSpeed;
+        engine.setSpinSpeed(spinSpeed);
+        restartRotationSpin();
+    }
+
+    public float getSpinRate() {
+        return engine.getSpinRate();
+    }
+
+    /**
+     * Spin at a fixed angular velocity, independent of the frame rate
+     *
+     * @param spinRate the speed in degrees per second, or 0 to move by spinSpeed on every step
+     */
+    public void setSpinRate(float spinRate) {
+        engine.setSpinRate(spinRate, SystemClock.uptimeMillis());
+        restartRotationSpin();
     }
 
     public int getRimWidth() {
-        return rimWidth;
+        return engine.getRimWidth();
     }
 
     public void setRimWidth(int rimWidth) {
-        this.rimWidth = rimWidth;
+        engine.setRimWidth(rimWidth);
+        invalidateBounds();
+        invalidateMeasure(false);
     }
 
     public int getDelayMillis() {
-        return delayMillis;
+        return engine.getDelayMillis();
     }
 
     public void setDelayMillis(int delayMillis) {
-        this.delayMillis = delayMillis;
+        engine.setDelayMillis(delayMillis);
+        restartRotationSpin();
+    }
+
+    /**
+     * Turns a view around a pivot at a constant speed. Only loaded on Honeycomb and above.
+     */
+    private static class RotationSpin {
+
+        private final View view;
+        private ObjectAnimator animator;
+        //The view's own rotation and pivot, restored when the spin stops
+        private float baseRotation;
+        private float basePivotX;
+        private float basePivotY;
+
+        RotationSpin(View view) {
+            this.view = view;
+        }
+
+        boolean isRunning() {
+            return animator != null;
+        }
+
+        /**
+         * @param degreesPerSecond the speed, negative to turn anticlockwise
+         */
+        void start(float pivotX, float pivotY, float degreesPerSecond) {
+            baseRotation = view.getRotation();
+            basePivotX = view.getPivotX();
+            basePivotY = view.getPivotY();
+            view.setPivotX(pivotX);
+            view.setPivotY(pivotY);
+            float turn = degreesPerSecond > 0 ? 360 : -360;
+            animator = ObjectAnimator.ofFloat(view, "rotation", baseRotation, baseRotation + turn);
+            animator.setDuration((long) (360 * 1000 / Math.abs(degreesPerSecond)));
+            animator.setInterpolator(new LinearInterpolator());
+            animator.setRepeatCount(ValueAnimator.INFINITE);
+            animator.start();
+        }
+
+        /**
+         * Stop turning and put the view back as it was
+         *
+         * @return the angle turned since the last full turn, in degrees
+         */
+        float stop() {
+            animator.cancel();
+            animator = null;
+            float turned = view.getRotation() - baseRotation;
+            view.setRotation(baseRotation);
+            view.setPivotX(basePivotX);
+            view.setPivotY(basePivotY);
+            return turned;
+        }
     }
 }
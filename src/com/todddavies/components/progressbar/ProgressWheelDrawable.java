@@ -6,6 +6,9 @@ import android.graphics.drawable.Drawable;
 import android.os.SystemClock;
 import android.text.TextUtils;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+
 /**
  *
  */
@@ -14,39 +17,21 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
 
     static final String TAG = "ProgressWheelDrawable";
 
-    private static final long FRAME_DURATION = 1000 / 60;
     private final static float OFFSET_PER_FRAME = 0.01f;
 
-    //Sizes (with defaults)
+    // The level of a full circle, as set by ProgressBar
+    final static int MAX_LEVEL = 10000;
+
+    // Style and paints, shared with the drawables created from getConstantState()
+    private WheelState state;
+    private boolean mutated;
+
+    // Layout and animation state
+    private final ProgressWheelEngine engine = new ProgressWheelEngine();
+
+    //Sizes
     private int layout_height;
     private int layout_width;
-    private int fullRadius;
-    private int circleRadius;
-    private int barLength;
-    private int barWidth;
-    private int rimWidth;
-    private int textSize;
-    private float contourSize;
-
-    //Padding (with defaults)
-    private int paddingTop = 5;
-    private int paddingBottom = 5;
-    private int paddingLeft = 5;
-    private int paddingRight = 5;
-
-    //Colors (with defaults)
-    private int barColor;
-    private int contourColor;
-    private int circleColor;
-    private int rimColor;
-    private int textColor;
-
-    //Paints
-    private Paint barPaint = new Paint();
-    private Paint circlePaint = new Paint();
-    private Paint rimPaint = new Paint();
-    private Paint textPaint = new Paint();
-    private Paint contourPaint = new Paint();
 
     //Rectangles
     @SuppressWarnings("unused")
@@ -54,57 +39,192 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
     private RectF circleBounds = new RectF();
     private RectF circleOuterContour = new RectF();
     private RectF circleInnerContour = new RectF();
-
-    // Animation
-    // The amount of pixels to move the bar by on each draw
-    private int spinSpeed;
-    int progress = 0;
-    boolean isSpinning = false;
+    // The area to redraw when only the bar moves
+    private final RectF barDirtyBounds = new RectF();
+    private final Rect barDirtyRect = new Rect();
+    private boolean barDirtyRectValid;
+    // The sweep of the bar when it was last drawn
+    private float drawnProgress;
+
+    // Setters only mark what they change as stale; it is recomputed once, before the next draw
+    private boolean boundsDirty;
+    private boolean paintsDirty;
+    private boolean textDirty;
+
+    // Static layer cache (rim and contours, which are drawn under the bar)
+    private Bitmap staticLayer;
+    private boolean staticLayerValid;
+
+    // Pre-rendered spin frames, shared with identically styled wheels
+    private SpriteSheetCache.Key spriteKey;
+    private boolean drawingSprites;
+    private final SpriteSheetCache.FrameRenderer spriteRenderer = new SpriteSheetCache.FrameRenderer() {
+        @Override
+        public void renderFrame(Canvas canvas, int progress) {
+            drawRim(canvas);
+            drawSpinningBar(canvas, progress);
+            drawInnerCircle(canvas);
+        }
+    };
 
     //Other
-    private String text = "";
-    private String[] splitText = {};
+    private final TextLayoutCache.Font font = new TextLayoutCache.Font() {
+        @Override
+        public float measureText(String text) {
+            return state.textPaint.measureText(text);
+        }
+
+        @Override
+        public float ascent() {
+            return state.textPaint.ascent();
+        }
 
-    Runnable mUpdater = new Runnable() {
         @Override
-        public void run() {
-            if (isSpinning) {
-                progress += spinSpeed;
-                if (progress > 360) {
-                    progress = 0;
+        public float descent() {
+            return state.textPaint.descent();
+        }
+    };
+
+    // Optional frame timing
+    private WheelMetrics metrics;
+
+    private final FrameClock frameClock = new FrameClock(new FrameClock.Callback() {
+        @Override
+        public boolean doFrame(long frameTimeMillis) {
+            // Stop ticking once stopped, hidden or no longer attached to a host
+            if (!engine.isSpinning() || !isVisible() || getCallback() == null) {
+                return false;
+            }
+            float oldProgress = engine.getProgress();
+            if (engine.step(frameTimeMillis)) {
+                if (!drawingSprites) {
+                    invalidateBar(oldProgress, engine.getProgress());
+                } else if (SpriteSheetCache.frameIndex(oldProgress)
+                        != SpriteSheetCache.frameIndex(engine.getProgress())) {
+                    // Sprites only change when the bar reaches the next frame, and then the
+                    // whole bitmap is replaced; the bar's exact angles don't match the frame's
+                    if (metrics != null) {
+                        metrics.onInvalidate();
+                    }
+                    invalidateSelf();
                 }
-                doStart();
             }
+            return true;
         }
-    };
+    });
+
+    private ProgressWheelDrawable(WheelState state) {
+        this.state = state;
+        engine.setRimWidth(state.rimWidth);
+        engine.setSpinSpeed(state.spinSpeed);
+        engine.setSpinRate(state.spinRate, SystemClock.uptimeMillis());
+        engine.setDelayMillis(state.delayMillis);
+        engine.setBarWidth(state.barWidth);
+        engine.setBarLength(state.barLength);
+        engine.setContourSize(state.contourSize);
+        engine.setCircleRadius(state.circleRadius);
+        engine.setFullRadius(state.fullRadius);
+        textDirty = true;
+        updateFrameInterval();
+    }
 
-    private ProgressWheelDrawable(ProgressWheelDrawable.Builder builder) {
-        setText(builder.text);
-        this.textColor = builder.textColor;
-        this.textSize = builder.textSize;
-        this.barColor = builder.barColor;
-        this.rimColor = builder.rimColor;
-        this.rimWidth = builder.rimWidth;
-        this.spinSpeed = builder.spinSpeed;
-        this.circleColor = builder.circleColor;
-        this.barWidth = builder.barWidth;
-        this.barLength = builder.barLength;
-        this.contourColor = builder.contourColor;
-        this.contourSize = builder.contourSize;
-        this.circleRadius = builder.circleRadius;
-        this.fullRadius = builder.fullRadius;
+    /**
+     * The style of this drawable. Drawables created from it share its paints
+     * until one of them is changed or {@link #mutate()} is called.
+     */
+    @Override
+    public ConstantState getConstantState() {
+        return state;
     }
 
+    /**
+     * Give this drawable its own copy of the style, so that changing it
+     * doesn't affect the drawables it was shared with
+     */
     @Override
-    public void start() {
-        if (isRunning()) {
+    public Drawable mutate() {
+        if (!mutated && super.mutate() == this) {
+            state = new WheelState(state);
+            mutated = true;
+        }
+        return this;
+    }
+
+    /**
+     * The style to modify; it's copied first if it may still be shared
+     */
+    private WheelState editState() {
+        mutate();
+        return state;
+    }
+
+    /**
+     * Mark the paints as stale after a setter has changed the style
+     */
+    private void invalidatePaints() {
+        state.paintsDirty = true;
+        paintsDirty = true;
+        invalidateSelf();
+    }
+
+    /**
+     * Mark the layout of the wheel as stale, along with the paints
+     * that depend on the same sizes
+     */
+    private void invalidateBounds() {
+        boundsDirty = true;
+        invalidatePaints();
+    }
+
+    /**
+     * Recompute whatever has been marked as stale since the last draw
+     */
+    private void setupIfDirty() {
+        if (state.paintsDirty) {
+            state.setupPaints();
+        }
+        if (!boundsDirty && !paintsDirty && !textDirty) {
             return;
         }
-        doStart();
+        if (boundsDirty) {
+            setupBounds();
+            updateFrameInterval();
+        }
+        if (boundsDirty || paintsDirty) {
+            staticLayerValid = false;
+            spriteKey = null;
+        }
+        setupTextMetrics();
+        boundsDirty = false;
+        paintsDirty = false;
+        textDirty = false;
     }
 
-    void doStart() {
-        scheduleSelf(mUpdater, SystemClock.currentThreadTimeMillis() + FRAME_DURATION);
+    /**
+     * Pace the frame clock: at most maxFrameRate frames per second, no more often than
+     * the spin steps (delayMillis) and, when adaptive, no more often than it takes
+     * spinning at spinRate to move the bar by a pixel
+     */
+    private void updateFrameInterval() {
+        long interval = state.maxFrameRate > 0 ? 1000 / state.maxFrameRate : 0;
+        interval = Math.max(interval, state.delayMillis);
+        if (state.adaptiveFrameRate) {
+            interval = Math.max(interval, engine.visibleStepMillis());
+        }
+        frameClock.setFrameInterval(interval);
+    }
+
+    @Override
+    public void start() {
+        if (frameClock.isRunning()) {
+            return;
+        }
+        if (!engine.isSpinning()) {
+            engine.startSpinning(SystemClock.uptimeMillis());
+        }
+        if (isVisible()) {
+            frameClock.start();
+        }
         invalidateSelf();
     }
 
@@ -113,14 +233,54 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
         if (!isRunning()) {
             return;
         }
-        isSpinning = false;
-        unscheduleSelf(mUpdater);
+        engine.stopSpinning();
+        frameClock.stop();
+        // Show the determinate progress again, e.g. when a ProgressBar leaves indeterminate mode
+        engine.setProgress(levelToDegrees(getLevel()));
+        invalidateSelf();
     }
 
+    /**
+     * Show the level (out of 10000) as determinate progress while not spinning.
+     * This is how ProgressBar sets the progress of its progress drawable.
+     */
     @Override
-    public void scheduleSelf(Runnable what, long when) {
-        isSpinning = true;
-        super.scheduleSelf(what, when);
+    protected boolean onLevelChange(int level) {
+        if (engine.isSpinning()) {
+            return false;
+        }
+        engine.setProgress(levelToDegrees(level));
+        // Changes that don't move the end of the bar by a pixel wait until they add up
+        if (!engine.isVisibleChange(drawnProgress, engine.getProgress())) {
+            return false;
+        }
+        invalidateBar(drawnProgress, engine.getProgress());
+        return true;
+    }
+
+    private static float levelToDegrees(int level) {
+        return level * 360f / MAX_LEVEL;
+    }
+
+    /**
+     * Suspend ticking while hidden. Spinning at spinRate resumes in phase,
+     * unless restart is requested.
+     */
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        boolean changed = super.setVisible(visible, restart);
+        if (engine.isSpinning()) {
+            if (visible) {
+                if (restart) {
+                    engine.setProgress(0);
+                    engine.startSpinning(SystemClock.uptimeMillis());
+                }
+                frameClock.start();
+            } else {
+                frameClock.stop();
+            }
+        }
+        return changed;
     }
 
     @Override
@@ -131,124 +291,204 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
         layout_width = bounds.width();
         layout_height = bounds.height();
 
-        setupBounds();
-        setupPaints();
+        boundsDirty = true;
         invalidateSelf();
     }
 
     @Override
     public boolean isRunning() {
-        return isSpinning;
+        return engine.isSpinning();
+    }
+
+    /**
+     * The layout and animation state, for hosts that advance the
+     * animation themselves instead of through {@link #start()}
+     */
+    ProgressWheelEngine getEngine() {
+        return engine;
     }
 
     /**
      * Set the bounds of the component
      */
     private void setupBounds() {
-        // Width should equal to Height, find the min value to steup the circle
-        int minValue = Math.min(layout_width, layout_height);
+        engine.setupBounds(layout_width, layout_height, 0, 0, 0, 0);
+
+        rectBounds.set(engine.getRectLeft(), engine.getRectTop(),
+                engine.getRectRight(), engine.getRectBottom());
+        circleBounds.set(engine.getCircleLeft(), engine.getCircleTop(),
+                engine.getCircleRight(), engine.getCircleBottom());
+        circleInnerContour.set(engine.getInnerContourLeft(), engine.getInnerContourTop(),
+                engine.getInnerContourRight(), engine.getInnerContourBottom());
+        circleOuterContour.set(engine.getOuterContourLeft(), engine.getOuterContourTop(),
+                engine.getOuterContourRight(), engine.getOuterContourBottom());
+    }
+
+    /**
+     * Position the text lines so that the draw pass doesn't have to measure them.
+     * Must be called whenever the text, the text paint or the size changes.
+     * The lines and their widths come from the shared cache, so text that any
+     * wheel has shown at the same size is only split and measured once.
+     */
+    private void setupTextMetrics() {
+        Paint textPaint = state.textPaint;
+        engine.setTextLayout(TextLayoutCache.getInstance().obtain(state.text,
+                textPaint.getTextSize(), textPaint.getTypeface(), font));
+        engine.positionText();
+    }
 
-        // Calc the Offset if needed
-        int xOffset = layout_width - minValue;
-        int yOffset = layout_height - minValue;
+    @Override
+    public void draw(Canvas canvas) {
+        final long drawStart = metrics != null ? System.nanoTime() : 0;
+        setupIfDirty();
+        drawnProgress = engine.getProgress();
+        SpriteSheetCache.Sheet sprites = getSpriteSheet();
+        drawingSprites = sprites != null;
+        if (drawingSprites) {
+            // The whole wheel, pre-rendered at the nearest frame
+            int frame = SpriteSheetCache.frameIndex(engine.getProgress());
+            canvas.drawBitmap(sprites.getFrame(frame, spriteRenderer), 0, 0, null);
+        } else if (state.staticLayerCacheEnabled && layout_width > 0 && layout_height > 0) {
+            // Composite the cached rim, then the bar and the inner circle on top, as drawn directly
+            if (state.rimVisible || state.contourVisible) {
+                canvas.drawBitmap(getStaticLayer(), 0, 0, null);
+            }
+            drawBar(canvas);
+            drawInnerCircle(canvas);
+        } else {
+            drawRim(canvas);
+            drawBar(canvas);
+            drawInnerCircle(canvas);
+        }
+        //Draw the text (positions are measured in setupTextMetrics)
+        if (state.textVisible) {
+            String[] lines = engine.getTextLines();
+            float[] lineX = engine.getTextLineX();
+            for (int i = 0; i < lines.length; i++) {
+                canvas.drawText(lines[i], lineX[i], engine.getTextBaselineY(), state.textPaint);
+            }
+        }
+        if (metrics != null) {
+            metrics.onDraw(System.nanoTime() - drawStart);
+        }
+    }
 
-        // Add the offset
-        paddingTop = (yOffset / 2);
-        paddingBottom = (yOffset / 2);
-        paddingLeft = (xOffset / 2);
-        paddingRight = (xOffset / 2);
+    // Each primitive is skipped if its paint is fully transparent, see WheelState.setupPaints
+    private void drawRim(Canvas canvas) {
+        if (state.rimVisible) {
+            canvas.drawArc(circleBounds, 360, 360, false, state.rimPaint);
+        }
+        if (state.contourVisible) {
+            canvas.drawArc(circleOuterContour, 360, 360, false, state.contourPaint);
+            canvas.drawArc(circleInnerContour, 360, 360, false, state.contourPaint);
+        }
+    }
 
-        rectBounds = new RectF(paddingLeft,
-                paddingTop,
-                getBounds().width() - paddingRight,
-                getBounds().height() - paddingBottom);
+    private void drawBar(Canvas canvas) {
+        if (!state.barVisible) {
+            return;
+        }
+        if (engine.isSpinning()) {
+            drawSpinningBar(canvas, engine.getProgress());
+        } else {
+            canvas.drawArc(circleBounds, -90, engine.getProgress(), false, state.barPaint);
+        }
+    }
 
-        circleBounds = new RectF(paddingLeft + barWidth,
-                paddingTop + barWidth,
-                getBounds().width() - paddingRight - barWidth,
-                getBounds().height() - paddingBottom - barWidth);
-        circleInnerContour = new RectF(circleBounds.left + (rimWidth / 2.0f) + (contourSize / 2.0f), circleBounds.top + (rimWidth / 2.0f) + (contourSize / 2.0f), circleBounds.right - (rimWidth / 2.0f) - (contourSize / 2.0f), circleBounds.bottom - (rimWidth / 2.0f) - (contourSize / 2.0f));
-        circleOuterContour = new RectF(circleBounds.left - (rimWidth / 2.0f) - (contourSize / 2.0f), circleBounds.top - (rimWidth / 2.0f) - (contourSize / 2.0f), circleBounds.right + (rimWidth / 2.0f) + (contourSize / 2.0f), circleBounds.bottom + (rimWidth / 2.0f) + (contourSize / 2.0f));
+    private void drawSpinningBar(Canvas canvas, float progress) {
+        if (state.barVisible) {
+            canvas.drawArc(circleBounds, progress - 90, engine.getBarLength(), false, state.barPaint);
+        }
+    }
 
-        fullRadius = (this.getBounds().width() - paddingRight - barWidth) / 2;
-        circleRadius = (fullRadius - barWidth) + 1;
+    private void drawInnerCircle(Canvas canvas) {
+        if (state.circleVisible) {
+            canvas.drawCircle(engine.getCircleCenterX(), engine.getCircleCenterY(),
+                    engine.getCircleRadius(), state.circlePaint);
+        }
     }
 
     /**
-     * Set the properties of the paints we're using to
-     * draw the progress wheel
+     * Invalidate only the area covered by the bar at its old and new positions
      */
-    private void setupPaints() {
-        barPaint.setColor(barColor);
-        barPaint.setAntiAlias(true);
-        barPaint.setStyle(Paint.Style.STROKE);
-        barPaint.setStrokeWidth(barWidth);
-
-        rimPaint.setColor(rimColor);
-        rimPaint.setAntiAlias(true);
-        rimPaint.setStyle(Paint.Style.STROKE);
-        rimPaint.setStrokeWidth(rimWidth);
-
-        circlePaint.setColor(circleColor);
-        circlePaint.setAntiAlias(true);
-        circlePaint.setStyle(Paint.Style.FILL);
-
-        textPaint.setColor(textColor);
-        textPaint.setStyle(Paint.Style.FILL);
-        textPaint.setAntiAlias(true);
-        textPaint.setTextSize(textSize);
+    private void invalidateBar(float oldProgress, float newProgress) {
+        engine.computeBarDirtyBounds(oldProgress, newProgress);
+        barDirtyBounds.set(engine.getDirtyLeft(), engine.getDirtyTop(),
+                engine.getDirtyRight(), engine.getDirtyBottom());
+        barDirtyBounds.roundOut(barDirtyRect);
+        if (metrics != null) {
+            metrics.onInvalidate();
+        }
+        // The host asks for the dirty bounds synchronously from invalidateSelf()
+        barDirtyRectValid = true;
+        invalidateSelf();
+        barDirtyRectValid = false;
+    }
 
-        contourPaint.setColor(contourColor);
-        contourPaint.setAntiAlias(true);
-        contourPaint.setStyle(Paint.Style.STROKE);
-        contourPaint.setStrokeWidth(contourSize);
+    /**
+     * The area that needs redrawing for the current invalidation: only the bar's
+     * old and new positions when the bar alone moved, otherwise the whole bounds.
+     * Overrides Drawable.getDirtyBounds() on Lollipop and above, and is used by
+     * {@link ProgressWheelView} on every version.
+     */
+    public Rect getDirtyBounds() {
+        return barDirtyRectValid ? barDirtyRect : getBounds();
     }
 
-    @Override
-    public void draw(Canvas canvas) {
-        Rect bounds = getBounds();
-        //Draw the rim
-        canvas.drawArc(circleBounds, 360, 360, false, rimPaint);
-        canvas.drawArc(circleOuterContour, 360, 360, false, contourPaint);
-        canvas.drawArc(circleInnerContour, 360, 360, false, contourPaint);
-        //Draw the bar
-        if (isSpinning) {
-            canvas.drawArc(circleBounds, progress - 90, barLength, false, barPaint);
+    /**
+     * Get the bitmap holding the rim and contours,
+     * re-rendering it only if the bounds or the paints have changed
+     */
+    private Bitmap getStaticLayer() {
+        if (staticLayerValid) {
+            return staticLayer;
+        }
+        if (staticLayer != null && staticLayer.getWidth() == layout_width
+                && staticLayer.getHeight() == layout_height) {
+            staticLayer.eraseColor(0);
         } else {
-            canvas.drawArc(circleBounds, -90, progress, false, barPaint);
+            releaseStaticLayer();
+            staticLayer = Bitmap.createBitmap(layout_width, layout_height, Bitmap.Config.ARGB_8888);
         }
-        //Draw the inner circle
-        canvas.drawCircle((circleBounds.width() / 2) + rimWidth + paddingLeft,
-                (circleBounds.height() / 2) + rimWidth + paddingTop,
-                circleRadius,
-                circlePaint);
-        //Draw the text (attempts to center it horizontally and vertically)
-        float textHeight = textPaint.descent() - textPaint.ascent();
-        float verticalTextOffset = (textHeight / 2) - textPaint.descent();
+        Canvas layerCanvas = new Canvas(staticLayer);
+        drawRim(layerCanvas);
+        staticLayerValid = true;
+        return staticLayer;
+    }
 
-        for (String s : splitText) {
-            float horizontalTextOffset = textPaint.measureText(s) / 2;
-            canvas.drawText(s, getBounds().width() / 2 - horizontalTextOffset,
-                    getBounds().height() / 2 + verticalTextOffset, textPaint);
+    /**
+     * Get the spin frames for the current size and style,
+     * or null if the wheel should be drawn directly
+     */
+    private SpriteSheetCache.Sheet getSpriteSheet() {
+        if (!state.spriteCacheEnabled || !engine.isSpinning()) {
+            return null;
         }
+        if (spriteKey == null) {
+            spriteKey = SpriteSheetCache.keyFor(layout_width, layout_height, engine,
+                    state.rimPaint, state.contourPaint, state.barPaint, state.circlePaint);
+        }
+        return SpriteSheetCache.getInstance().obtain(spriteKey);
+    }
+
+    private void releaseStaticLayer() {
+        if (staticLayer != null) {
+            staticLayer.recycle();
+            staticLayer = null;
+        }
+        staticLayerValid = false;
     }
 
     @Override
     public void setAlpha(int alpha) {
-        barPaint.setAlpha(alpha);
-        circlePaint.setAlpha(alpha);
-        rimPaint.setAlpha(alpha);
-        textPaint.setAlpha(alpha);
-        contourPaint.setAlpha(alpha);
+        editState().alpha = alpha;
+        invalidatePaints();
     }
 
     @Override
     public void setColorFilter(ColorFilter cf) {
-        barPaint.setColorFilter(cf);
-        circlePaint.setColorFilter(cf);
-        rimPaint.setColorFilter(cf);
-        textPaint.setColorFilter(cf);
-        contourPaint.setColorFilter(cf);
+        editState().colorFilter = cf;
+        invalidatePaints();
     }
 
     /**
@@ -258,12 +498,11 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
      * @param text the text to show ('\n' constitutes a new line)
      */
     public void setText(String text) {
-        this.text = text;
-        if (TextUtils.isEmpty(text)) {
-            splitText = new String[0];
-        } else {
-            splitText = this.text.split("\n");
+        if (TextUtils.equals(text, state.text)) {
+            return;
         }
+        editState().text = text;
+        textDirty = true;
         invalidateSelf();
     }
 
@@ -273,128 +512,697 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
     }
 
     public void setFullRadius(int fullRadius) {
-        this.fullRadius = fullRadius;
+        editState().fullRadius = fullRadius;
+        engine.setFullRadius(fullRadius);
         invalidateSelf();
     }
 
     public void setCircleRadius(int circleRadius) {
-        this.circleRadius = circleRadius;
+        editState().circleRadius = circleRadius;
+        engine.setCircleRadius(circleRadius);
         invalidateSelf();
     }
 
     public void setBarLength(int barLength) {
-        this.barLength = barLength;
+        editState().barLength = barLength;
+        engine.setBarLength(barLength);
+        spriteKey = null;
         invalidateSelf();
     }
 
     public void setBarWidth(int barWidth) {
-        this.barWidth = barWidth;
-        invalidateSelf();
+        editState().barWidth = barWidth;
+        engine.setBarWidth(barWidth);
+        invalidateBounds();
     }
 
     public void setRimWidth(int rimWidth) {
-        this.rimWidth = rimWidth;
-        invalidateSelf();
+        editState().rimWidth = rimWidth;
+        engine.setRimWidth(rimWidth);
+        invalidateBounds();
     }
 
     public void setTextSize(int textSize) {
-        this.textSize = textSize;
-        invalidateSelf();
+        editState().textSize = textSize;
+        invalidatePaints();
     }
 
     public void setContourSize(float contourSize) {
-        this.contourSize = contourSize;
-        invalidateSelf();
+        editState().contourSize = contourSize;
+        engine.setContourSize(contourSize);
+        invalidateBounds();
     }
 
     public void setBarColor(int barColor) {
-        this.barColor = barColor;
-        invalidateSelf();
+        editState().barColor = barColor;
+        invalidatePaints();
     }
 
     public void setContourColor(int contourColor) {
-        this.contourColor = contourColor;
-        invalidateSelf();
+        editState().contourColor = contourColor;
+        invalidatePaints();
     }
 
     public void setCircleColor(int circleColor) {
-        this.circleColor = circleColor;
-        invalidateSelf();
+        editState().circleColor = circleColor;
+        invalidatePaints();
     }
 
     public void setRimColor(int rimColor) {
-        this.rimColor = rimColor;
-        invalidateSelf();
+        editState().rimColor = rimColor;
+        invalidatePaints();
     }
 
     public void setTextColor(int textColor) {
-        this.textColor = textColor;
-        invalidateSelf();
+        editState().textColor = textColor;
+        invalidatePaints();
     }
 
     public void setSpinSpeed(int spinSpeed) {
-        this.spinSpeed = spinSpeed;
+        editState().spinSpeed = spinSpeed;
+        engine.setSpinSpeed(spinSpeed);
         invalidateSelf();
     }
 
+    /**
+     * Spin at a fixed angular velocity, independent of the frame rate
+     *
+     * @param spinRate the speed in degrees per second, or 0 to move by spinSpeed on every frame
+     */
+    public void setSpinRate(float spinRate) {
+        editState().spinRate = spinRate;
+        engine.setSpinRate(spinRate, SystemClock.uptimeMillis());
+        updateFrameInterval();
+    }
+
+    /**
+     * Wait at least this long between two steps of the spin
+     *
+     * @param delayMillis the delay in milliseconds, or 0 to step on every frame
+     */
+    public void setDelayMillis(int delayMillis) {
+        editState().delayMillis = Math.max(0, delayMillis);
+        engine.setDelayMillis(delayMillis);
+        updateFrameInterval();
+    }
+
+    /**
+     * Cap the frame rate of the animation, e.g. to save battery on a wheel that is always
+     * on screen. When spinning by spinSpeed rather than at spinRate, the cap also slows the spin down.
+     *
+     * @param maxFrameRate the maximum number of frames per second, or 0 for the display's rate
+     */
+    public void setMaxFrameRate(int maxFrameRate) {
+        editState().maxFrameRate = Math.max(0, maxFrameRate);
+        updateFrameInterval();
+    }
+
+    /**
+     * Lower the frame rate of a wheel spinning at spinRate to what its size needs, skipping
+     * the frames that would move the bar by less than a pixel. Small or slow wheels then
+     * draw far less often than the display refreshes. On by default.
+     *
+     * @param enabled true to adapt the frame rate to the size of the wheel
+     */
+    public void setAdaptiveFrameRate(boolean enabled) {
+        editState().adaptiveFrameRate = enabled;
+        updateFrameInterval();
+    }
+
+    /**
+     * Render the parts of the wheel that don't move and lie under the bar (the rim
+     * and the contours) once into an offscreen bitmap, so that each animated frame
+     * only draws the bar and the inner circle on top of it. Costs one ARGB bitmap the size of the bounds.
+     *
+     * @param enabled true to cache the static layer
+     */
+    public void setStaticLayerCacheEnabled(boolean enabled) {
+        editState().staticLayerCacheEnabled = enabled;
+        if (!enabled) {
+            releaseStaticLayer();
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * Draw the spinning wheel from pre-rendered frames, one for every
+     * {@code 360 / SpriteSheetCache.FRAME_COUNT} degrees, instead of drawing the arcs on every frame.
+     * The frames are shared by all the wheels with the same size and style, and are
+     * dropped when the cache runs over its memory budget. The text is still drawn on top.
+     *
+     * @param enabled true to replay pre-rendered frames while spinning
+     */
+    public void setSpriteCacheEnabled(boolean enabled) {
+        editState().spriteCacheEnabled = enabled;
+        invalidateSelf();
+    }
+
+    /**
+     * Record frame timing into the given metrics, or stop recording
+     *
+     * @param metrics the metrics to record into, or null
+     */
+    public void setMetrics(WheelMetrics metrics) {
+        this.metrics = metrics;
+        frameClock.setMetrics(metrics);
+    }
+
+    public WheelMetrics getMetrics() {
+        return metrics;
+    }
+
     public int getFullRadius() {
-        return fullRadius;
+        return engine.getFullRadius();
     }
 
     public int getCircleRadius() {
-        return circleRadius;
+        return engine.getCircleRadius();
     }
 
     public int getBarLength() {
-        return barLength;
+        return engine.getBarLength();
     }
 
     public int getBarWidth() {
-        return barWidth;
+        return engine.getBarWidth();
     }
 
     public int getRimWidth() {
-        return rimWidth;
+        return engine.getRimWidth();
     }
 
     public int getTextSize() {
-        return textSize;
+        return state.textSize;
     }
 
     public float getContourSize() {
-        return contourSize;
+        return engine.getContourSize();
     }
 
     public int getBarColor() {
-        return barColor;
+        return state.barColor;
     }
 
     public int getContourColor() {
-        return contourColor;
+        return state.contourColor;
     }
 
     public int getCircleColor() {
-        return circleColor;
+        return state.circleColor;
     }
 
     public int getRimColor() {
-        return rimColor;
+        return state.rimColor;
     }
 
     public int getTextColor() {
-        return textColor;
+        return state.textColor;
     }
 
     public int getSpinSpeed() {
-        return spinSpeed;
+        return engine.getSpinSpeed();
+    }
+
+    public float getSpinRate() {
+        return engine.getSpinRate();
+    }
+
+    public boolean isStaticLayerCacheEnabled() {
+        return state.staticLayerCacheEnabled;
+    }
+
+    public boolean isSpriteCacheEnabled() {
+        return state.spriteCacheEnabled;
+    }
+
+    public int getDelayMillis() {
+        return state.delayMillis;
+    }
+
+    public int getMaxFrameRate() {
+        return state.maxFrameRate;
+    }
+
+    /**
+     * The minimum time between two frames of the spin, or 0 for every display frame
+     */
+    long getFrameInterval() {
+        return frameClock.getFrameInterval();
+    }
+
+    public boolean isAdaptiveFrameRate() {
+        return state.adaptiveFrameRate;
     }
 
     public boolean isSpinning() {
-        return isSpinning;
+        return engine.isSpinning();
     }
 
     public String getText() {
-        return text;
+        return state.text;
+    }
+
+    /**
+     * The immutable style of a wheel: its colors, sizes, text and the paints
+     * configured from them. A drawable copies it before changing it, so
+     * wheels created from the same state can share it safely.
+     */
+    static final class WheelState extends ConstantState {
+
+        String text;
+        int textSize;
+        int textColor;
+        int circleColor;
+        int barLength;
+        int barColor;
+        int barWidth;
+        int rimColor;
+        int rimWidth;
+        int spinSpeed;
+        float spinRate;
+        int delayMillis;
+        int contourColor;
+        float contourSize;
+        int fullRadius;
+        int circleRadius;
+        boolean staticLayerCacheEnabled;
+        boolean spriteCacheEnabled;
+        int maxFrameRate;
+        boolean adaptiveFrameRate;
+        int alpha = 255;
+        ColorFilter colorFilter;
+
+        //Paints
+        final Paint barPaint = new Paint();
+        final Paint circlePaint = new Paint();
+        final Paint rimPaint = new Paint();
+        final Paint textPaint = new Paint();
+        final Paint contourPaint = new Paint();
+        //Whether the paints need setting up again; shared, so only the first wheel to draw does it
+        boolean paintsDirty;
+        //Whether each paint leaves a mark, so that invisible primitives aren't drawn at all
+        boolean barVisible;
+        boolean rimVisible;
+        boolean circleVisible;
+        boolean textVisible;
+        boolean contourVisible;
+
+        WheelState(Builder builder) {
+            text = builder.text;
+            textSize = builder.textSize;
+            textColor = builder.textColor;
+            circleColor = builder.circleColor;
+            barLength = builder.barLength;
+            barColor = builder.barColor;
+            barWidth = builder.barWidth;
+            rimColor = builder.rimColor;
+            rimWidth = builder.rimWidth;
+            spinSpeed = builder.spinSpeed;
+            spinRate = builder.spinRate;
+            delayMillis = builder.delayMillis;
+            contourColor = builder.contourColor;
+            contourSize = builder.contourSize;
+            fullRadius = builder.fullRadius;
+            circleRadius = builder.circleRadius;
+            staticLayerCacheEnabled = builder.staticLayerCacheEnabled;
+            spriteCacheEnabled = builder.spriteCacheEnabled;
+            maxFrameRate = builder.maxFrameRate;
+            adaptiveFrameRate = builder.adaptiveFrameRate;
+            setupPaints();
+        }
+
+        WheelState(WheelState orig) {
+            text = orig.text;
+            textSize = orig.textSize;
+            textColor = orig.textColor;
+            circleColor = orig.circleColor;
+            barLength = orig.barLength;
+            barColor = orig.barColor;
+            barWidth = orig.barWidth;
+            rimColor = orig.rimColor;
+            rimWidth = orig.rimWidth;
+            spinSpeed = orig.spinSpeed;
+            spinRate = orig.spinRate;
+            delayMillis = orig.delayMillis;
+            contourColor = orig.contourColor;
+            contourSize = orig.contourSize;
+            fullRadius = orig.fullRadius;
+            circleRadius = orig.circleRadius;
+            staticLayerCacheEnabled = orig.staticLayerCacheEnabled;
+            spriteCacheEnabled = orig.spriteCacheEnabled;
+            maxFrameRate = orig.maxFrameRate;
+            adaptiveFrameRate = orig.adaptiveFrameRate;
+            alpha = orig.alpha;
+            colorFilter = orig.colorFilter;
+            paintsDirty = true;
+        }
+
+        /**
+         * Set the properties of the paints we're using to
+         * draw the progress wheel
+         */
+        void setupPaints() {
+            paintsDirty = false;
+            barPaint.setColor(barColor);
+            barPaint.setAntiAlias(true);
+            barPaint.setStyle(Paint.Style.STROKE);
+            barPaint.setStrokeWidth(barWidth);
+
+            rimPaint.setColor(rimColor);
+            rimPaint.setAntiAlias(true);
+            rimPaint.setStyle(Paint.Style.STROKE);
+            rimPaint.setStrokeWidth(rimWidth);
+
+            circlePaint.setColor(circleColor);
+            circlePaint.setAntiAlias(true);
+            circlePaint.setStyle(Paint.Style.FILL);
+
+            textPaint.setColor(textColor);
+            textPaint.setStyle(Paint.Style.FILL);
+            textPaint.setAntiAlias(true);
+            textPaint.setTextSize(textSize);
+
+            contourPaint.setColor(contourColor);
+            contourPaint.setAntiAlias(true);
+            contourPaint.setStyle(Paint.Style.STROKE);
+            contourPaint.setStrokeWidth(contourSize);
+
+            if (alpha != 255) {
+                barPaint.setAlpha(alpha);
+                circlePaint.setAlpha(alpha);
+                rimPaint.setAlpha(alpha);
+                textPaint.setAlpha(alpha);
+                contourPaint.setAlpha(alpha);
+            }
+            barPaint.setColorFilter(colorFilter);
+            circlePaint.setColorFilter(colorFilter);
+            rimPaint.setColorFilter(colorFilter);
+            textPaint.setColorFilter(colorFilter);
+            contourPaint.setColorFilter(colorFilter);
+
+            barVisible = isVisible(barPaint);
+            rimVisible = isVisible(rimPaint);
+            circleVisible = isVisible(circlePaint);
+            textVisible = isVisible(textPaint);
+            contourVisible = isVisible(contourPaint);
+        }
+
+        /**
+         * Whether drawing with a paint can change any pixel. A zero stroke width is
+         * still a hairline, and a color filter may turn a transparent color opaque,
+         * so only the alpha of unfiltered paints is taken into account.
+         */
+        private static boolean isVisible(Paint paint) {
+            return paint.getAlpha() != 0 || paint.getColorFilter() != null;
+        }
+
+        @Override
+        public Drawable newDrawable() {
+            return new ProgressWheelDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+
+    /**
+     * Start a batch of style changes, applied by {@link Editor#apply()}
+     * with a single rebuild and a single invalidate
+     */
+    public Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Take the style from an edit, with the layout and paints rebuilt before the next draw
+     */
+    private void applyEdit(Editor editor, WheelState editedState, boolean shared) {
+        state = editedState;
+        mutated = !shared;
+        if (editor.has(Editor.TEXT)) {
+            textDirty = true;
+        }
+        if (editor.has(Editor.BAR_LENGTH)) {
+            engine.setBarLength(state.barLength);
+        }
+        if (editor.has(Editor.BAR_WIDTH)) {
+            engine.setBarWidth(state.barWidth);
+        }
+        if (editor.has(Editor.RIM_WIDTH)) {
+            engine.setRimWidth(state.rimWidth);
+        }
+        if (editor.has(Editor.CONTOUR_SIZE)) {
+            engine.setContourSize(state.contourSize);
+        }
+        if (editor.has(Editor.FULL_RADIUS)) {
+            engine.setFullRadius(state.fullRadius);
+        }
+        if (editor.has(Editor.CIRCLE_RADIUS)) {
+            engine.setCircleRadius(state.circleRadius);
+        }
+        if (editor.has(Editor.SPIN_SPEED)) {
+            engine.setSpinSpeed(state.spinSpeed);
+        }
+        if (editor.has(Editor.SPIN_RATE)) {
+            engine.setSpinRate(state.spinRate, SystemClock.uptimeMillis());
+            updateFrameInterval();
+        }
+        if (editor.has(Editor.BAR_WIDTH | Editor.RIM_WIDTH | Editor.CONTOUR_SIZE)) {
+            boundsDirty = true;
+        }
+        paintsDirty = true;
+        invalidateSelf();
+    }
+
+    /**
+     * A batch of style changes for one or more wheels. Only the properties
+     * that are set are changed; the others keep each wheel's own value.
+     */
+    public static class Editor {
+
+        static final int TEXT = 1;
+        static final int TEXT_SIZE = 1 << 1;
+        static final int TEXT_COLOR = 1 << 2;
+        static final int CIRCLE_COLOR = 1 << 3;
+        static final int BAR_LENGTH = 1 << 4;
+        static final int BAR_COLOR = 1 << 5;
+        static final int BAR_WIDTH = 1 << 6;
+        static final int RIM_COLOR = 1 << 7;
+        static final int RIM_WIDTH = 1 << 8;
+        static final int SPIN_SPEED = 1 << 9;
+        static final int SPIN_RATE = 1 << 10;
+        static final int CONTOUR_COLOR = 1 << 11;
+        static final int CONTOUR_SIZE = 1 << 12;
+        static final int FULL_RADIUS = 1 << 13;
+        static final int CIRCLE_RADIUS = 1 << 14;
+
+        private final ProgressWheelDrawable target;
+        private int changed = 0;
+
+        String text;
+        int textSize;
+        int textColor;
+        int circleColor;
+        int barLength;
+        int barColor;
+        int barWidth;
+        int rimColor;
+        int rimWidth;
+        int spinSpeed;
+        float spinRate;
+        int contourColor;
+        float contourSize;
+        int fullRadius;
+        int circleRadius;
+
+        /**
+         * Create an edit to apply to any number of wheels with {@link #applyTo(Iterable)}
+         */
+        public Editor() {
+            this(null);
+        }
+
+        Editor(ProgressWheelDrawable target) {
+            this.target = target;
+        }
+
+        boolean has(int properties) {
+            return (changed & properties) != 0;
+        }
+
+        public Editor setText(String text) {
+            this.text = text;
+            changed |= TEXT;
+            return this;
+        }
+
+        public Editor setTextSize(int textSize) {
+            this.textSize = textSize;
+            changed |= TEXT_SIZE;
+            return this;
+        }
+
+        public Editor setTextColor(int textColor) {
+            this.textColor = textColor;
+            changed |= TEXT_COLOR;
+            return this;
+        }
+
+        public Editor setCircleColor(int circleColor) {
+            this.circleColor = circleColor;
+            changed |= CIRCLE_COLOR;
+            return this;
+        }
+
+        public Editor setBarLength(int barLength) {
+            this.barLength = barLength;
+            changed |= BAR_LENGTH;
+            return this;
+        }
+
+        public Editor setBarColor(int barColor) {
+            this.barColor = barColor;
+            changed |= BAR_COLOR;
+            return this;
+        }
+
+        public Editor setBarWidth(int barWidth) {
+            this.barWidth = barWidth;
+            changed |= BAR_WIDTH;
+            return this;
+        }
+
+        public Editor setRimColor(int rimColor) {
+            this.rimColor = rimColor;
+            changed |= RIM_COLOR;
+            return this;
+        }
+
+        public Editor setRimWidth(int rimWidth) {
+            this.rimWidth = rimWidth;
+            changed |= RIM_WIDTH;
+            return this;
+        }
+
+        public Editor setSpinSpeed(int spinSpeed) {
+            this.spinSpeed = spinSpeed;
+            changed |= SPIN_SPEED;
+            return this;
+        }
+
+        public Editor setSpinRate(float spinRate) {
+            this.spinRate = spinRate;
+            changed |= SPIN_RATE;
+            return this;
+        }
+
+        public Editor setContourColor(int contourColor) {
+            this.contourColor = contourColor;
+            changed |= CONTOUR_COLOR;
+            return this;
+        }
+
+        public Editor setContourSize(float contourSize) {
+            this.contourSize = contourSize;
+            changed |= CONTOUR_SIZE;
+            return this;
+        }
+
+        public Editor setFullRadius(int fullRadius) {
+            this.fullRadius = fullRadius;
+            changed |= FULL_RADIUS;
+            return this;
+        }
+
+        public Editor setCircleRadius(int circleRadius) {
+            this.circleRadius = circleRadius;
+            changed |= CIRCLE_RADIUS;
+            return this;
+        }
+
+        /**
+         * Apply the changes to the wheel this edit was started from
+         */
+        public void apply() {
+            if (target == null) {
+                throw new IllegalStateException("No wheel to apply to, use applyTo()");
+            }
+            if (target.mutated) {
+                // The wheel owns its style, so it can be edited in place
+                writeTo(target.state);
+                target.applyEdit(this, target.state, false);
+            } else {
+                applyTo(Collections.singletonList(target));
+            }
+        }
+
+        /**
+         * Apply the changes to every wheel in one pass. Wheels that shared a
+         * style before the edit share the edited style too.
+         */
+        public void applyTo(Iterable<? extends ProgressWheelDrawable> wheels) {
+            IdentityHashMap<WheelState, WheelState> edited = new IdentityHashMap<WheelState, WheelState>();
+            for (ProgressWheelDrawable wheel : wheels) {
+                WheelState editedState = edited.get(wheel.state);
+                if (editedState == null) {
+                    editedState = new WheelState(wheel.state);
+                    writeTo(editedState);
+                    edited.put(wheel.state, editedState);
+                }
+                wheel.applyEdit(this, editedState, true);
+            }
+        }
+
+        private void writeTo(WheelState state) {
+            if (has(TEXT)) {
+                state.text = text;
+            }
+            if (has(TEXT_SIZE)) {
+                state.textSize = textSize;
+            }
+            if (has(TEXT_COLOR)) {
+                state.textColor = textColor;
+            }
+            if (has(CIRCLE_COLOR)) {
+                state.circleColor = circleColor;
+            }
+            if (has(BAR_LENGTH)) {
+                state.barLength = barLength;
+            }
+            if (has(BAR_COLOR)) {
+                state.barColor = barColor;
+            }
+            if (has(BAR_WIDTH)) {
+                state.barWidth = barWidth;
+            }
+            if (has(RIM_COLOR)) {
+                state.rimColor = rimColor;
+            }
+            if (has(RIM_WIDTH)) {
+                state.rimWidth = rimWidth;
+            }
+            if (has(SPIN_SPEED)) {
+                state.spinSpeed = spinSpeed;
+            }
+            if (has(SPIN_RATE)) {
+                state.spinRate = spinRate;
+            }
+            if (has(CONTOUR_COLOR)) {
+                state.contourColor = contourColor;
+            }
+            if (has(CONTOUR_SIZE)) {
+                state.contourSize = contourSize;
+            }
+            if (has(FULL_RADIUS)) {
+                state.fullRadius = fullRadius;
+            }
+            if (has(CIRCLE_RADIUS)) {
+                state.circleRadius = circleRadius;
+            }
+            state.paintsDirty = true;
+        }
     }
 
     /**
@@ -412,10 +1220,16 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
         int rimColor = 0xAADDDDDD;
         int rimWidth = 20;
         int spinSpeed = 2;
+        float spinRate = 0;
+        int delayMillis = 0;
         int contourColor = Color.TRANSPARENT;
         int contourSize = 0;
         int fullRadius = 100;
         int circleRadius = 80;
+        boolean staticLayerCacheEnabled = false;
+        boolean spriteCacheEnabled = false;
+        int maxFrameRate = 0;
+        boolean adaptiveFrameRate = true;
 
         public Builder setText(String text) {
             this.text = text;
@@ -467,6 +1281,16 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
             return this;
         }
 
+        public Builder setSpinRate(float spinRate) {
+            this.spinRate = spinRate;
+            return this;
+        }
+
+        public Builder setDelayMillis(int delayMillis) {
+            this.delayMillis = Math.max(0, delayMillis);
+            return this;
+        }
+
         public Builder setFullRadius(int fullRadius) {
             this.fullRadius = fullRadius;
             return this;
@@ -487,8 +1311,28 @@ public class ProgressWheelDrawable extends Drawable implements Animatable {
             return this;
         }
 
+        public Builder setStaticLayerCacheEnabled(boolean enabled) {
+            this.staticLayerCacheEnabled = enabled;
+            return this;
+        }
+
+        public Builder setSpriteCacheEnabled(boolean enabled) {
+            this.spriteCacheEnabled = enabled;
+            return this;
+        }
+
+        public Builder setMaxFrameRate(int maxFrameRate) {
+            this.maxFrameRate = Math.max(0, maxFrameRate);
+            return this;
+        }
+
+        public Builder setAdaptiveFrameRate(boolean enabled) {
+            this.adaptiveFrameRate = enabled;
+            return this;
+        }
+
         public ProgressWheelDrawable build() {
-            return new ProgressWheelDrawable(this);
+            return new ProgressWheelDrawable(new WheelState(this));
         }
     }
 }
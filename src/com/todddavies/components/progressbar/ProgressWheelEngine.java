@@ -0,0 +1,623 @@
+package com.todddavies.components.progressbar;
+
+/**
+ * The platform independent core of a progress wheel: the layout of the circle
+ * within its bounds, and the state of the bar (its progress, or its angle in spin mode).
+ * <p/>
+ * {@link ProgressWheel} and {@link ProgressWheelDrawable} are renderers over this class.
+ * It only uses primitive fields and doesn't depend on the Android framework,
+ * so it can be tested and benchmarked on a plain JVM. It is not thread-safe.
+ */
+public class ProgressWheelEngine {
+
+    /**
+     * Measures the width of a line of text, typically Paint.measureText
+     */
+    public interface TextMeasurer {
+        float measureText(String text);
+    }
+
+    private static final String[] NO_LINES = {};
+
+    //Sizes (with defaults)
+    private int barLength = 60;
+    private int barWidth = 20;
+    private int rimWidth = 20;
+    private float contourSize = 0;
+
+    //Layout, computed by setupBounds
+    private int width = 0;
+    private int height = 0;
+    private int fullRadius = 100;
+    private int circleRadius = 80;
+    //The padding once the circle is centred
+    private int paddingTop = 5;
+    private int paddingBottom = 5;
+    private int paddingLeft = 5;
+    private int paddingRight = 5;
+    private float rectLeft, rectTop, rectRight, rectBottom;
+    private float circleLeft, circleTop, circleRight, circleBottom;
+    private float innerContourLeft, innerContourTop, innerContourRight, innerContourBottom;
+    private float outerContourLeft, outerContourTop, outerContourRight, outerContourBottom;
+    private float circleCenterX, circleCenterY;
+
+    //Text, split and measured by setTextLayout (or setText and setupText), positioned by positionText
+    private String[] textLines = NO_LINES;
+    private float[] textLineWidths = {};
+    //Whether textLineWidths belongs to a shared layout, and so mustn't be written to
+    private boolean textLineWidthsShared = false;
+    private float textAscent = 0;
+    private float textDescent = 0;
+    private float[] textLineX = {};
+    private float textBaselineY = 0;
+
+    //The area covered by the bar, computed by computeBarDirtyBounds
+    private float dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+
+    //Animation
+    //The sweep of the bar in degrees or, in spin mode, its angle
+    private float progress = 0;
+    //The value that fills the whole circle, see degreesFor
+    private float max = 360;
+    private boolean spinning = false;
+    //The amount of degrees to move the bar by on each step
+    private int spinSpeed = 2;
+    //The speed of the bar in degrees per second, used instead of spinSpeed when non-zero
+    private float spinRate = 0;
+    //The time and angle at which the wheel started spinning
+    private long spinStartMillis = 0;
+    private float spinStartAngle = 0;
+    //The number of milliseconds to wait inbetween each step (0 steps on every frame)
+    private int delayMillis = 0;
+    //The time of the last step
+    private long lastStepMillis = 0;
+
+    //----------------------------------
+    //Layout
+    //----------------------------------
+
+    /**
+     * Lay the circle out in the centre of the given area
+     *
+     * @param width         the width of the area
+     * @param height        the height of the area
+     * @param paddingLeft   the padding inside the area, before centring
+     * @param paddingTop    the padding inside the area, before centring
+     * @param paddingRight  the padding inside the area, before centring
+     * @param paddingBottom the padding inside the area, before centring
+     */
+    public void setupBounds(int width, int height,
+                            int paddingLeft, int paddingTop, int paddingRight, int paddingBottom) {
+        this.width = width;
+        this.height = height;
+
+        // Width should equal to Height, find the min value to steup the circle
+        int minValue = Math.min(width, height);
+
+        // Calc the Offset if needed
+        int xOffset = width - minValue;
+        int yOffset = height - minValue;
+
+        // Add the offset
+        this.paddingTop = paddingTop + (yOffset / 2);
+        this.paddingBottom = paddingBottom + (yOffset / 2);
+        this.paddingLeft = paddingLeft + (xOffset / 2);
+        this.paddingRight = paddingRight + (xOffset / 2);
+
+        rectLeft = this.paddingLeft;
+        rectTop = this.paddingTop;
+        rectRight = width - this.paddingRight;
+        rectBottom = height - this.paddingBottom;
+
+        circleLeft = this.paddingLeft + barWidth;
+        circleTop = this.paddingTop + barWidth;
+        circleRight = width - this.paddingRight - barWidth;
+        circleBottom = height - this.paddingBottom - barWidth;
+
+        float contourOffset = (rimWidth / 2.0f) + (contourSize / 2.0f);
+        innerContourLeft = circleLeft + contourOffset;
+        innerContourTop = circleTop + contourOffset;
+        innerContourRight = circleRight - contourOffset;
+        innerContourBottom = circleBottom - contourOffset;
+        outerContourLeft = circleLeft - contourOffset;
+        outerContourTop = circleTop - contourOffset;
+        outerContourRight = circleRight + contourOffset;
+        outerContourBottom = circleBottom + contourOffset;
+
+        fullRadius = (width - this.paddingRight - barWidth) / 2;
+        circleRadius = (fullRadius - barWidth) + 1;
+        circleCenterX = ((circleRight - circleLeft) / 2) + rimWidth + this.paddingLeft;
+        circleCenterY = ((circleBottom - circleTop) / 2) + rimWidth + this.paddingTop;
+    }
+
+    /**
+     * Set the text shown in the middle of the wheel
+     *
+     * @param text the text to show ('\n' constitutes a new line)
+     */
+    public void setText(String text) {
+        textLines = TextLayoutCache.splitLines(text);
+        //Unmeasured until setupText
+        textLineWidths = new float[textLines.length];
+        textLineWidthsShared = false;
+    }
+
+    /**
+     * Measure the lines set by {@link #setText(String)} and centre them, so that drawing
+     * them needs no measuring. Must be called whenever the text, the text size or the bounds change.
+     *
+     * @param measurer measures the width of each line
+     * @param ascent   the font ascent (negative, as returned by Paint.ascent)
+     * @param descent  the font descent
+     */
+    public void setupText(TextMeasurer measurer, float ascent, float descent) {
+        if (textLineWidthsShared || textLineWidths.length != textLines.length) {
+            textLineWidths = new float[textLines.length];
+            textLineWidthsShared = false;
+        }
+        for (int i = 0; i < textLines.length; i++) {
+            textLineWidths[i] = measurer.measureText(textLines[i]);
+        }
+        textAscent = ascent;
+        textDescent = descent;
+        positionText();
+    }
+
+    /**
+     * Show text that has already been split and measured, e.g. by the shared {@link TextLayoutCache}.
+     * Call {@link #positionText()} once the bounds are set up.
+     */
+    void setTextLayout(TextLayoutCache.Layout layout) {
+        textLines = layout.lines;
+        textLineWidths = layout.widths;
+        textLineWidthsShared = true;
+        textAscent = layout.ascent;
+        textDescent = layout.descent;
+    }
+
+    /**
+     * Centre the measured text lines horizontally and vertically.
+     * Must be called whenever the text layout or the bounds change.
+     */
+    public void positionText() {
+        float textHeight = textDescent - textAscent;
+        float verticalTextOffset = (textHeight / 2) - textDescent;
+        textBaselineY = height / 2 + verticalTextOffset;
+
+        //Only ever grows, so texts with different numbers of lines don't allocate
+        if (textLineX.length < textLines.length) {
+            textLineX = new float[textLines.length];
+        }
+        for (int i = 0; i < textLines.length; i++) {
+            textLineX[i] = width / 2 - textLineWidths[i] / 2;
+        }
+    }
+
+    /**
+     * The smallest diameter that fits the text inside the rim: the lines, which are all drawn
+     * on the same baseline, make a box whose diagonal has to fit in the inner circle.
+     * Always leaves room for at least one line, so a wheel without text isn't just a dot.
+     * Uses the text as last measured by setTextLayout or setupText.
+     *
+     * @return the diameter, including the bar and the rim but not the padding
+     */
+    public int measureDiameter() {
+        float textHeight = textDescent - textAscent;
+        float textWidth = textLines.length == 0 ? textHeight : 0;
+        for (float lineWidth : textLineWidths) {
+            textWidth = Math.max(textWidth, lineWidth);
+        }
+        double innerDiameter = Math.sqrt(textWidth * textWidth + textHeight * textHeight);
+        return (int) Math.ceil(innerDiameter + 2 * (barWidth + rimWidth + contourSize));
+    }
+
+    /**
+     * The lines of text, not to be modified
+     */
+    public String[] getTextLines() {
+        return textLines;
+    }
+
+    /**
+     * The x position of each line of text, not to be modified.
+     * May be longer than {@link #getTextLines()}, the extra entries are unused.
+     */
+    public float[] getTextLineX() {
+        return textLineX;
+    }
+
+    public float getTextBaselineY() {
+        return textBaselineY;
+    }
+
+    /**
+     * Compute the area covered by the bar at two positions, for invalidating only
+     * what changes between two frames. Read the result with the getDirty* methods.
+     */
+    public void computeBarDirtyBounds(float oldProgress, float newProgress) {
+        dirtyLeft = Float.MAX_VALUE;
+        dirtyTop = Float.MAX_VALUE;
+        dirtyRight = -Float.MAX_VALUE;
+        dirtyBottom = -Float.MAX_VALUE;
+        unionBarBounds(oldProgress);
+        unionBarBounds(newProgress);
+        //Half the stroke, plus a pixel for anti-aliasing
+        float outset = barWidth / 2f + 1;
+        dirtyLeft -= outset;
+        dirtyTop -= outset;
+        dirtyRight += outset;
+        dirtyBottom += outset;
+    }
+
+    private void unionBarBounds(float barProgress) {
+        if (spinning) {
+            unionArcBounds(barProgress - 90, barLength);
+        } else {
+            unionArcBounds(-90, barProgress);
+        }
+    }
+
+    /**
+     * Grow the dirty bounds to contain an arc of the circle, using the
+     * angle conventions of Canvas.drawArc (0 is 3 o'clock, clockwise)
+     */
+    private void unionArcBounds(float startAngle, float sweepAngle) {
+        if (sweepAngle < 0) {
+            startAngle += sweepAngle;
+            sweepAngle = -sweepAngle;
+        }
+        if (sweepAngle >= 360) {
+            unionDirty(circleLeft, circleTop, circleRight, circleBottom);
+            return;
+        }
+        float cx = (circleLeft + circleRight) / 2;
+        float cy = (circleTop + circleBottom) / 2;
+        float rx = (circleRight - circleLeft) / 2;
+        float ry = (circleBottom - circleTop) / 2;
+        //The two end points...
+        double start = Math.toRadians(startAngle);
+        double end = Math.toRadians(startAngle + sweepAngle);
+        float x1 = cx + rx * (float) Math.cos(start);
+        float y1 = cy + ry * (float) Math.sin(start);
+        float x2 = cx + rx * (float) Math.cos(end);
+        float y2 = cy + ry * (float) Math.sin(end);
+        float left = Math.min(x1, x2);
+        float top = Math.min(y1, y2);
+        float right = Math.max(x1, x2);
+        float bottom = Math.max(y1, y2);
+        //...plus any of the four extremes of the circle that the arc passes through
+        if (arcContains(startAngle, sweepAngle, 0)) {
+            right = circleRight;
+        }
+        if (arcContains(startAngle, sweepAngle, 90)) {
+            bottom = circleBottom;
+        }
+        if (arcContains(startAngle, sweepAngle, 180)) {
+            left = circleLeft;
+        }
+        if (arcContains(startAngle, sweepAngle, 270)) {
+            top = circleTop;
+        }
+        unionDirty(left, top, right, bottom);
+    }
+
+    private void unionDirty(float left, float top, float right, float bottom) {
+        dirtyLeft = Math.min(dirtyLeft, left);
+        dirtyTop = Math.min(dirtyTop, top);
+        dirtyRight = Math.max(dirtyRight, right);
+        dirtyBottom = Math.max(dirtyBottom, bottom);
+    }
+
+    private static boolean arcContains(float startAngle, float sweepAngle, float angle) {
+        float delta = (angle - startAngle) % 360;
+        if (delta < 0) {
+            delta += 360;
+        }
+        return delta <= sweepAngle;
+    }
+
+    //----------------------------------
+    //Animation
+    //----------------------------------
+
+    /**
+     * Put the wheel in spin mode, starting from the current angle
+     *
+     * @param nowMillis the current time, in the same time base as the frame times passed to step
+     */
+    public void startSpinning(long nowMillis) {
+        spinning = true;
+        spinStartMillis = nowMillis;
+        spinStartAngle = progress;
+    }
+
+    /**
+     * Leave spin mode, leaving the progress where it is
+     */
+    public void stopSpinning() {
+        spinning = false;
+    }
+
+    /**
+     * Advance the bar in spin mode
+     *
+     * @param frameTimeMillis the time of the frame
+     * @return true if the bar has moved
+     */
+    public boolean step(long frameTimeMillis) {
+        if (!spinning || frameTimeMillis - lastStepMillis < delayMillis) {
+            return false;
+        }
+        lastStepMillis = frameTimeMillis;
+        float oldProgress = progress;
+        if (spinRate != 0) {
+            progress = angleAt(frameTimeMillis);
+        } else {
+            progress += spinSpeed;
+            if (progress > 360) {
+                progress = 0;
+            }
+        }
+        return progress != oldProgress;
+    }
+
+    /**
+     * The angle of the bar at the given time when spinning at spinRate
+     */
+    public float angleAt(long timeMillis) {
+        float angle = spinStartAngle + (timeMillis - spinStartMillis) * spinRate / 1000f;
+        angle %= 360;
+        if (angle < 0) {
+            angle += 360;
+        }
+        return angle;
+    }
+
+    /**
+     * Set the progress (in degrees, of 360) or, in spin mode, the angle of the bar
+     */
+    public void setProgress(float progress) {
+        this.progress = progress;
+    }
+
+    public float getProgress() {
+        return progress;
+    }
+
+    /**
+     * The sweep of the bar for a progress value
+     *
+     * @param value the progress, out of max
+     * @return the sweep in degrees, out of 360
+     */
+    public float degreesFor(float value) {
+        return max > 0 ? value * 360 / max : 0;
+    }
+
+    /**
+     * Set the value that fills the whole circle
+     */
+    public void setMax(float max) {
+        this.max = max;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    /**
+     * Whether moving the end of the bar between two sweeps would move it
+     * by at least a pixel along the circle, and so is worth redrawing
+     */
+    public boolean isVisibleChange(float fromDegrees, float toDegrees) {
+        float radius = (circleRight - circleLeft) / 2;
+        return Math.abs(toDegrees - fromDegrees) * radius * (float) Math.PI / 180 >= 1;
+    }
+
+    /**
+     * The shortest time between steps at which spinning at spinRate still moves the
+     * bar by at least a pixel along the circle; stepping more often is wasted work
+     *
+     * @return the time in milliseconds, or 0 when spinning by spinSpeed or not laid out yet
+     */
+    public long visibleStepMillis() {
+        float radius = (circleRight - circleLeft) / 2;
+        float pixelsPerSecond = Math.abs(spinRate) * radius * (float) Math.PI / 180;
+        if (pixelsPerSecond <= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(1000 / pixelsPerSecond);
+    }
+
+    public boolean isSpinning() {
+        return spinning;
+    }
+
+    /**
+     * Spin at a fixed angular velocity, independent of the frame rate
+     *
+     * @param spinRate  the speed in degrees per second, or 0 to move by spinSpeed on every step
+     * @param nowMillis the current time, the angle carries on from the current one
+     */
+    public void setSpinRate(float spinRate, long nowMillis) {
+        this.spinRate = spinRate;
+        spinStartMillis = nowMillis;
+        spinStartAngle = progress;
+    }
+
+    public float getSpinRate() {
+        return spinRate;
+    }
+
+    public int getSpinSpeed() {
+        return spinSpeed;
+    }
+
+    public void setSpinSpeed(int spinSpeed) {
+        this.spinSpeed = spinSpeed;
+    }
+
+    public int getDelayMillis() {
+        return delayMillis;
+    }
+
+    public void setDelayMillis(int delayMillis) {
+        this.delayMillis = Math.max(0, delayMillis);
+    }
+
+    //----------------------------------
+    //Getters + setters
+    //----------------------------------
+
+    public int getBarLength() {
+        return barLength;
+    }
+
+    public void setBarLength(int barLength) {
+        this.barLength = barLength;
+    }
+
+    public int getBarWidth() {
+        return barWidth;
+    }
+
+    public void setBarWidth(int barWidth) {
+        this.barWidth = barWidth;
+    }
+
+    public int getRimWidth() {
+        return rimWidth;
+    }
+
+    public void setRimWidth(int rimWidth) {
+        this.rimWidth = rimWidth;
+    }
+
+    public float getContourSize() {
+        return contourSize;
+    }
+
+    public void setContourSize(float contourSize) {
+        this.contourSize = contourSize;
+    }
+
+    public int getFullRadius() {
+        return fullRadius;
+    }
+
+    public void setFullRadius(int fullRadius) {
+        this.fullRadius = fullRadius;
+    }
+
+    public int getCircleRadius() {
+        return circleRadius;
+    }
+
+    public void setCircleRadius(int circleRadius) {
+        this.circleRadius = circleRadius;
+    }
+
+    public int getPaddingTop() {
+        return paddingTop;
+    }
+
+    public int getPaddingBottom() {
+        return paddingBottom;
+    }
+
+    public int getPaddingLeft() {
+        return paddingLeft;
+    }
+
+    public int getPaddingRight() {
+        return paddingRight;
+    }
+
+    public float getRectLeft() {
+        return rectLeft;
+    }
+
+    public float getRectTop() {
+        return rectTop;
+    }
+
+    public float getRectRight() {
+        return rectRight;
+    }
+
+    public float getRectBottom() {
+        return rectBottom;
+    }
+
+    public float getCircleLeft() {
+        return circleLeft;
+    }
+
+    public float getCircleTop() {
+        return circleTop;
+    }
+
+    public float getCircleRight() {
+        return circleRight;
+    }
+
+    public float getCircleBottom() {
+        return circleBottom;
+    }
+
+    public float getInnerContourLeft() {
+        return innerContourLeft;
+    }
+
+    public float getInnerContourTop() {
+        return innerContourTop;
+    }
+
+    public float getInnerContourRight() {
+        return innerContourRight;
+    }
+
+    public float getInnerContourBottom() {
+        return innerContourBottom;
+    }
+
+    public float getOuterContourLeft() {
+        return outerContourLeft;
+    }
+
+    public float getOuterContourTop() {
+        return outerContourTop;
+    }
+
+    public float getOuterContourRight() {
+        return outerContourRight;
+    }
+
+    public float getOuterContourBottom() {
+        return outerContourBottom;
+    }
+
+    public float getCircleCenterX() {
+        return circleCenterX;
+    }
+
+    public float getCircleCenterY() {
+        return circleCenterY;
+    }
+
+    public float getDirtyLeft() {
+        return dirtyLeft;
+    }
+
+    public float getDirtyTop() {
+        return dirtyTop;
+    }
+
+    public float getDirtyRight() {
+        return dirtyRight;
+    }
+
+    public float getDirtyBottom() {
+        return dirtyBottom;
+    }
+}
@@ -0,0 +1,260 @@
+package com.todddavies.components.progressbar;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * A progress wheel drawn from its own render thread onto a SurfaceView, so it keeps
+ * spinning while the UI thread is busy with a long layout pass or a garbage collection.
+ * Takes the same XML attributes as {@link ProgressWheel}.
+ * <p/>
+ * The surface is placed on top of the window so that the wheel's transparent parts
+ * show the content behind it; views can't be drawn over it.
+ */
+@SuppressWarnings("unused")
+public class ProgressWheelSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+
+    //Only touched from the render thread while it's running, and from the UI thread otherwise
+    private final ProgressWheelDrawable wheel;
+    private final ProgressWheelEngine engine;
+
+    private RenderThread renderThread;
+    private volatile boolean spinning = false;
+
+    public ProgressWheelSurfaceView(Context context) {
+        this(context, null);
+    }
+
+    public ProgressWheelSurfaceView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public ProgressWheelSurfaceView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        wheel = ProgressWheelView.parseAttributes(context.obtainStyledAttributes(attrs, R.styleable.ProgressWheel))
+                .build();
+        engine = wheel.getEngine();
+        getHolder().addCallback(this);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        setZOrderOnTop(true);
+    }
+
+    //----------------------------------
+    //Surface lifecycle (UI thread)
+    //----------------------------------
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        renderThread = new RenderThread(holder);
+        renderThread.start();
+        renderThread.prepareHandler();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, final int width, final int height) {
+        final int paddingLeft = getPaddingLeft();
+        final int paddingTop = getPaddingTop();
+        final int paddingRight = getPaddingRight();
+        final int paddingBottom = getPaddingBottom();
+        final RenderThread thread = renderThread;
+        thread.queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                thread.setOffset(paddingLeft, paddingTop);
+                wheel.setBounds(0, 0, width - paddingLeft - paddingRight, height - paddingTop - paddingBottom);
+            }
+        });
+    }
+
+    /**
+     * Stop the render thread before returning, as the surface mustn't be drawn to afterwards.
+     * The changes already queued are applied first, so that the wheel is up to date when
+     * the surface comes back.
+     */
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        RenderThread thread = renderThread;
+        renderThread = null;
+        thread.quitAfterEvents();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run a change to the wheel on the render thread and redraw it,
+     * or right away if there is no surface to draw on
+     */
+    private void queueEvent(Runnable event) {
+        if (renderThread == null) {
+            event.run();
+        } else {
+            renderThread.queueEvent(event);
+        }
+    }
+
+    //----------------------------------
+    //Getters + setters (UI thread, applied in order on the render thread)
+    //----------------------------------
+
+    /**
+     * Puts the wheel into spin mode
+     */
+    public void spin() {
+        spinning = true;
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                engine.startSpinning(SystemClock.uptimeMillis());
+            }
+        });
+    }
+
+    /**
+     * Stops the spinning and resets the progress
+     */
+    public void stopSpinning() {
+        spinning = false;
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                engine.stopSpinning();
+                engine.setProgress(0);
+            }
+        });
+    }
+
+    /**
+     * Stops the spinning and shows the progress
+     *
+     * @param progress the progress in degrees, out of 360
+     */
+    public void setProgress(final int progress) {
+        spinning = false;
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                engine.stopSpinning();
+                engine.setProgress(progress);
+            }
+        });
+    }
+
+    /**
+     * Set the text in the progress bar
+     *
+     * @param text the text to show ('\n' constitutes a new line)
+     */
+    public void setText(final String text) {
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                wheel.setText(text);
+            }
+        });
+    }
+
+    public boolean isSpinning() {
+        return spinning;
+    }
+
+    /**
+     * Draws the wheel once per frame while it spins, and once after each change otherwise
+     */
+    private class RenderThread extends HandlerThread {
+
+        private final SurfaceHolder holder;
+        private Handler handler;
+        private boolean frameScheduled = false;
+        private int offsetLeft;
+        private int offsetTop;
+
+        private final Runnable renderFrame = new Runnable() {
+            @Override
+            public void run() {
+                frameScheduled = false;
+                long frameTime = SystemClock.uptimeMillis();
+                engine.step(frameTime);
+                Canvas canvas = holder.lockCanvas();
+                if (canvas != null) {
+                    try {
+                        canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+                        canvas.translate(offsetLeft, offsetTop);
+                        wheel.draw(canvas);
+                    } finally {
+                        holder.unlockCanvasAndPost(canvas);
+                    }
+                }
+                if (engine.isSpinning()) {
+                    //Paced like the wheel's frame clock: by delayMillis and the frame rate cap
+                    scheduleFrame(frameTime + Math.max(FrameTicker.FRAME_DURATION, wheel.getFrameInterval()));
+                }
+            }
+        };
+
+        private final Runnable requestRender = new Runnable() {
+            @Override
+            public void run() {
+                scheduleFrame(0);
+            }
+        };
+
+        RenderThread(SurfaceHolder holder) {
+            super("ProgressWheelRenderer", Process.THREAD_PRIORITY_DISPLAY);
+            this.holder = holder;
+        }
+
+        /**
+         * Create the handler once the thread has started; blocks until its looper is ready
+         */
+        void prepareHandler() {
+            handler = new Handler(getLooper());
+        }
+
+        void queueEvent(Runnable event) {
+            handler.post(event);
+            handler.post(requestRender);
+        }
+
+        /**
+         * Quit once the events queued so far have run, dropping the frames still scheduled
+         */
+        void quitAfterEvents() {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    quit();
+                }
+            });
+        }
+
+        void setOffset(int left, int top) {
+            offsetLeft = left;
+            offsetTop = top;
+        }
+
+        private void scheduleFrame(long uptimeMillis) {
+            if (!frameScheduled) {
+                frameScheduled = true;
+                handler.postAtTime(renderFrame, uptimeMillis);
+            }
+        }
+    }
+}
@@ -2,12 +2,19 @@ package com.todddavies.components.progressbar;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
 import android.util.AttributeSet;
 import android.widget.ProgressBar;
 
 /**
- *
+ * A ProgressBar drawn by a {@link ProgressWheelDrawable}. The same wheel spins while the
+ * bar is indeterminate and shows the bar's progress out of its max otherwise. The platform's
+ * default ProgressBar style is indeterminate only, so determinate wheels need
+ * {@code android:indeterminateOnly="false"}, or the {@code ProgressWheelView.Determinate} style.
  */
 @SuppressWarnings("unused")
 public class ProgressWheelView extends ProgressBar {
@@ -22,7 +29,69 @@ public class ProgressWheelView extends ProgressBar {
 
     public ProgressWheelView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        parseAttributes(context.obtainStyledAttributes(attrs, R.styleable.ProgressWheel));
+        ProgressWheelDrawable wheel = parseAttributes(context.obtainStyledAttributes(attrs, R.styleable.ProgressWheel))
+                .build();
+        //ProgressBar sets the level of a progress drawable without a secondary progress layer
+        //to the secondary progress, so give it an empty one and only the progress layer is the wheel
+        LayerDrawable progress = new LayerDrawable(new Drawable[]{new ColorDrawable(Color.TRANSPARENT), wheel});
+        progress.setId(0, android.R.id.secondaryProgress);
+        progress.setId(1, android.R.id.progress);
+        setProgressDrawable(progress);
+        //After the layers, which take the wheel's callback when created
+        setIndeterminateDrawable(wheel);
+    }
+
+    /**
+     * The wheel showing the progress, or null if the progress drawable has been replaced
+     */
+    private ProgressWheelDrawable getProgressWheel() {
+        Drawable d = getProgressDrawable();
+        if (d instanceof LayerDrawable) {
+            d = ((LayerDrawable) d).findDrawableByLayerId(android.R.id.progress);
+        }
+        return d instanceof ProgressWheelDrawable ? (ProgressWheelDrawable) d : null;
+    }
+
+    /**
+     * ProgressBar detaches the drawable it replaces, so reattach
+     * the wheel if it still fills the indeterminate slot
+     */
+    @Override
+    public void setProgressDrawable(Drawable d) {
+        ProgressWheelDrawable old = getProgressWheel();
+        super.setProgressDrawable(d);
+        if (old != null && old == getIndeterminateDrawable()) {
+            old.setCallback(this);
+        }
+    }
+
+    /**
+     * ProgressBar detaches the drawable it replaces, so reattach the wheel if it still
+     * shows the progress, and stop its spin as it only shows progress from now on
+     */
+    @Override
+    public void setIndeterminateDrawable(Drawable d) {
+        Drawable old = getIndeterminateDrawable();
+        super.setIndeterminateDrawable(d);
+        if (old != null && old != d && old == getProgressWheel()) {
+            Drawable progress = getProgressDrawable();
+            old.setCallback(progress == old ? this : (Drawable.Callback) progress);
+            ((ProgressWheelDrawable) old).stop();
+        }
+    }
+
+    /**
+     * While indeterminate, ProgressBar sets the level of the wheel itself, the secondary
+     * progress included, so put the progress back on it when leaving indeterminate mode
+     */
+    @Override
+    public synchronized void setIndeterminate(boolean indeterminate) {
+        super.setIndeterminate(indeterminate);
+        ProgressWheelDrawable wheel = getProgressWheel();
+        if (!isIndeterminate() && wheel != null) {
+            float scale = getMax() > 0 ? (float) getProgress() / getMax() : 0;
+            wheel.setLevel((int) (scale * ProgressWheelDrawable.MAX_LEVEL));
+        }
     }
 
     private ProgressWheelDrawable checkIndeterminateDrawable() {
@@ -32,12 +101,30 @@ public class ProgressWheelView extends ProgressBar {
         return (ProgressWheelDrawable) ret;
     }
 
+    /**
+     * Invalidate only the dirty bounds reported by the wheel, rather than
+     * the whole drawable as ProgressBar does
+     */
+    @Override
+    public void invalidateDrawable(Drawable dr) {
+        if (dr instanceof ProgressWheelDrawable && dr == getIndeterminateDrawable()) {
+            final Rect dirty = ((ProgressWheelDrawable) dr).getDirtyBounds();
+            final int scrollX = getScrollX() + getPaddingLeft();
+            final int scrollY = getScrollY() + getPaddingTop();
+            invalidate(dirty.left + scrollX, dirty.top + scrollY,
+                    dirty.right + scrollX, dirty.bottom + scrollY);
+        } else {
+            super.invalidateDrawable(dr);
+        }
+    }
+
     /**
      * Parse the attributes passed to the view from the XML
      *
-     * @param a the attributes to parse
+     * @param a the attributes to parse, recycled once read
+     * @return a builder for a wheel with these attributes
      */
-    private void parseAttributes(TypedArray a) {
+    static ProgressWheelDrawable.Builder parseAttributes(TypedArray a) {
         ProgressWheelDrawable.Builder builder = new ProgressWheelDrawable.Builder();
         if (a.hasValue(R.styleable.ProgressWheel_barWidth)) {
             builder.setBarWidth((int) a.getDimension(R.styleable.ProgressWheel_barWidth, 0));
@@ -48,6 +135,12 @@ public class ProgressWheelView extends ProgressBar {
         if (a.hasValue(R.styleable.ProgressWheel_spinSpeed)) {
             builder.setSpinSpeed((int) a.getDimension(R.styleable.ProgressWheel_spinSpeed, 0));
         }
+        if (a.hasValue(R.styleable.ProgressWheel_spinRate)) {
+            builder.setSpinRate(a.getFloat(R.styleable.ProgressWheel_spinRate, 0));
+        }
+        if (a.hasValue(R.styleable.ProgressWheel_delayMillis)) {
+            builder.setDelayMillis(a.getInteger(R.styleable.ProgressWheel_delayMillis, 0));
+        }
         if (a.hasValue(R.styleable.ProgressWheel_barColor)) {
             builder.setBarColor(a.getColor(R.styleable.ProgressWheel_barColor, 0));
         }
@@ -75,9 +168,9 @@ public class ProgressWheelView extends ProgressBar {
         if (a.hasValue(R.styleable.ProgressWheel_contourSize)) {
             builder.setContourSize((int) a.getDimension(R.styleable.ProgressWheel_contourSize, 0));
         }
-        setIndeterminateDrawable(builder.build());
         // Recycle
         a.recycle();
+        return builder;
     }
 
     /**
@@ -142,6 +235,41 @@ public class ProgressWheelView extends ProgressBar {
         checkIndeterminateDrawable().setSpinSpeed(spinSpeed);
     }
 
+    public void setSpinRate(float spinRate) {
+        checkIndeterminateDrawable().setSpinRate(spinRate);
+    }
+
+    /**
+     * Start a batch of style changes, applied with a single redraw by {@link ProgressWheelDrawable.Editor#apply()}
+     */
+    public ProgressWheelDrawable.Editor edit() {
+        return checkIndeterminateDrawable().edit();
+    }
+
+    public void setStaticLayerCacheEnabled(boolean enabled) {
+        checkIndeterminateDrawable().setStaticLayerCacheEnabled(enabled);
+    }
+
+    public void setSpriteCacheEnabled(boolean enabled) {
+        checkIndeterminateDrawable().setSpriteCacheEnabled(enabled);
+    }
+
+    public void setDelayMillis(int delayMillis) {
+        checkIndeterminateDrawable().setDelayMillis(delayMillis);
+    }
+
+    public void setMaxFrameRate(int maxFrameRate) {
+        checkIndeterminateDrawable().setMaxFrameRate(maxFrameRate);
+    }
+
+    public void setAdaptiveFrameRate(boolean enabled) {
+        checkIndeterminateDrawable().setAdaptiveFrameRate(enabled);
+    }
+
+    public void setMetrics(WheelMetrics metrics) {
+        checkIndeterminateDrawable().setMetrics(metrics);
+    }
+
     public int getFullRadius() {
         return checkIndeterminateDrawable().getFullRadius();
     }
@@ -194,6 +322,34 @@ public class ProgressWheelView extends ProgressBar {
         return checkIndeterminateDrawable().getSpinSpeed();
     }
 
+    public float getSpinRate() {
+        return checkIndeterminateDrawable().getSpinRate();
+    }
+
+    public boolean isStaticLayerCacheEnabled() {
+        return checkIndeterminateDrawable().isStaticLayerCacheEnabled();
+    }
+
+    public boolean isSpriteCacheEnabled() {
+        return checkIndeterminateDrawable().isSpriteCacheEnabled();
+    }
+
+    public int getDelayMillis() {
+        return checkIndeterminateDrawable().getDelayMillis();
+    }
+
+    public int getMaxFrameRate() {
+        return checkIndeterminateDrawable().getMaxFrameRate();
+    }
+
+    public boolean isAdaptiveFrameRate() {
+        return checkIndeterminateDrawable().isAdaptiveFrameRate();
+    }
+
+    public WheelMetrics getMetrics() {
+        return checkIndeterminateDrawable().getMetrics();
+    }
+
     public boolean isSpinning() {
         return checkIndeterminateDrawable().isSpinning();
     }
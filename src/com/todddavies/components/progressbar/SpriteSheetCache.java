@@ -0,0 +1,199 @@
+package com.todddavies.components.progressbar;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The process-wide cache of pre-rendered spin frames. The spinning wheel is periodic,
+ * so it can be drawn once at {@link #FRAME_COUNT} positions and then replayed as bitmaps.
+ * Sheets are keyed by size and style, so identically styled wheels share one sheet, and
+ * the least recently used sheets are dropped once the cache grows past its memory budget.
+ * <p/>
+ * Must only be used from the UI thread.
+ */
+final class SpriteSheetCache {
+
+    //The number of frames in a full turn; the bar moves in steps of 360 / FRAME_COUNT degrees
+    static final int FRAME_COUNT = 60;
+
+    private static SpriteSheetCache instance;
+
+    private final long maxBytes;
+    private long bytes = 0;
+    //In access order, so iteration starts at the least recently used sheet
+    private final LinkedHashMap<Key, Sheet> sheets = new LinkedHashMap<Key, Sheet>(4, 0.75f, true);
+
+    interface FrameRenderer {
+        /**
+         * Draw the whole wheel, without its text, with the bar at the given position
+         *
+         * @param canvas   the frame to draw into, cleared and the size of the wheel
+         * @param progress the bar position in degrees
+         */
+        void renderFrame(Canvas canvas, int progress);
+    }
+
+    static SpriteSheetCache getInstance() {
+        if (instance == null) {
+            //An eighth of the heap, which also bounds the native bitmap memory on older platforms
+            instance = new SpriteSheetCache(Runtime.getRuntime().maxMemory() / 8);
+        }
+        return instance;
+    }
+
+    SpriteSheetCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the sheet for a key, creating an empty one if needed. Sheets aren't kept by
+     * their users between frames, so an evicted sheet can be garbage collected right away.
+     *
+     * @return the sheet, or null if a sheet of this size would never fit in the cache
+     */
+    Sheet obtain(Key key) {
+        Sheet sheet = sheets.get(key);
+        if (sheet != null) {
+            return sheet;
+        }
+        long size = Sheet.sizeOf(key.width, key.height);
+        if (key.width <= 0 || key.height <= 0 || size > maxBytes) {
+            return null;
+        }
+        trimToSize(maxBytes - size);
+        sheet = new Sheet(key.width, key.height);
+        sheets.put(key, sheet);
+        bytes += size;
+        return sheet;
+    }
+
+    /**
+     * Drop the least recently used sheets until at most maxSize bytes are cached
+     */
+    void trimToSize(long maxSize) {
+        Iterator<Map.Entry<Key, Sheet>> it = sheets.entrySet().iterator();
+        while (bytes > maxSize && it.hasNext()) {
+            Sheet sheet = it.next().getValue();
+            it.remove();
+            bytes -= Sheet.sizeOf(sheet.width, sheet.height);
+        }
+    }
+
+    /**
+     * The frame that shows the bar at a position
+     *
+     * @param progress the bar position in degrees
+     */
+    static int frameIndex(float progress) {
+        int index = (int) (progress * FRAME_COUNT / 360) % FRAME_COUNT;
+        return index < 0 ? index + FRAME_COUNT : index;
+    }
+
+    /**
+     * Build the key for a wheel from everything that shows up in its frames
+     */
+    static Key keyFor(int width, int height, ProgressWheelEngine engine,
+                      Paint rimPaint, Paint contourPaint, Paint barPaint, Paint circlePaint) {
+        int[] values = {
+                engine.getBarLength(),
+                Float.floatToIntBits(engine.getCircleLeft()),
+                Float.floatToIntBits(engine.getCircleTop()),
+                Float.floatToIntBits(engine.getCircleRight()),
+                Float.floatToIntBits(engine.getCircleBottom()),
+                Float.floatToIntBits(engine.getInnerContourLeft()),
+                Float.floatToIntBits(engine.getInnerContourTop()),
+                Float.floatToIntBits(engine.getInnerContourRight()),
+                Float.floatToIntBits(engine.getInnerContourBottom()),
+                Float.floatToIntBits(engine.getOuterContourLeft()),
+                Float.floatToIntBits(engine.getOuterContourTop()),
+                Float.floatToIntBits(engine.getOuterContourRight()),
+                Float.floatToIntBits(engine.getOuterContourBottom()),
+                Float.floatToIntBits(engine.getCircleCenterX()),
+                Float.floatToIntBits(engine.getCircleCenterY()),
+                engine.getCircleRadius(),
+                rimPaint.getColor(),
+                Float.floatToIntBits(rimPaint.getStrokeWidth()),
+                contourPaint.getColor(),
+                Float.floatToIntBits(contourPaint.getStrokeWidth()),
+                barPaint.getColor(),
+                Float.floatToIntBits(barPaint.getStrokeWidth()),
+                circlePaint.getColor()
+        };
+        //Shaders and color filters are compared by identity
+        Object[] refs = {
+                rimPaint.getShader(), rimPaint.getColorFilter(),
+                contourPaint.getColorFilter(), barPaint.getColorFilter(), circlePaint.getColorFilter()
+        };
+        return new Key(width, height, values, refs);
+    }
+
+    static final class Key {
+
+        final int width;
+        final int height;
+        private final int[] values;
+        private final Object[] refs;
+        private final int hash;
+
+        Key(int width, int height, int[] values, Object[] refs) {
+            this.width = width;
+            this.height = height;
+            this.values = values;
+            this.refs = refs;
+            this.hash = 31 * (31 * (31 * width + height) + Arrays.hashCode(values)) + Arrays.hashCode(refs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && width == other.width && height == other.height
+                    && Arrays.equals(values, other.values) && Arrays.equals(refs, other.refs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The frames of one wheel style, rendered the first time each one is needed
+     */
+    static final class Sheet {
+
+        final int width;
+        final int height;
+        private final Bitmap[] frames = new Bitmap[FRAME_COUNT];
+
+        Sheet(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        static long sizeOf(int width, int height) {
+            return (long) width * height * 4 * FRAME_COUNT;
+        }
+
+        Bitmap getFrame(int index, FrameRenderer renderer) {
+            Bitmap frame = frames[index];
+            if (frame == null) {
+                frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                renderer.renderFrame(new Canvas(frame), index * 360 / FRAME_COUNT);
+                frames[index] = frame;
+            }
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.todddavies.components.progressbar;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The process-wide cache of measured text. Wheels often show the same strings, e.g.
+ * "Loading..." or a percentage, so each text is split into lines and measured once per
+ * size and typeface, and the result is shared by every wheel that shows it. The least
+ * recently used layouts are dropped once there are more than {@link #MAX_SIZE} of them.
+ * <p/>
+ * Doesn't depend on the Android framework; the typeface is only compared by identity.
+ * Thread-safe, as wheels drawn from a render thread set their text there.
+ */
+final class TextLayoutCache {
+
+    static final int MAX_SIZE = 64;
+
+    private static final String[] NO_LINES = {};
+    private static final float[] NO_WIDTHS = {};
+
+    private static TextLayoutCache instance;
+
+    //In access order, so the eldest entry is the least recently used layout
+    private final LinkedHashMap<Key, Layout> layouts;
+    //Reused for lookups, so that a hit doesn't allocate
+    private final Key probe = new Key();
+
+    /**
+     * Measures text in one size and typeface, typically with a Paint
+     */
+    interface Font extends ProgressWheelEngine.TextMeasurer {
+        /**
+         * @return the ascent of the font (negative, as returned by Paint.ascent)
+         */
+        float ascent();
+
+        float descent();
+    }
+
+    static synchronized TextLayoutCache getInstance() {
+        if (instance == null) {
+            instance = new TextLayoutCache(MAX_SIZE);
+        }
+        return instance;
+    }
+
+    TextLayoutCache(final int maxSize) {
+        layouts = new LinkedHashMap<Key, Layout>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Layout> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the layout of a text, measuring it with the font only if it isn't cached
+     *
+     * @param text     the text ('\n' constitutes a new line), may be null
+     * @param textSize the size the font measures at
+     * @param typeface the typeface the font measures with, or null for the default
+     * @param font     measures the text on a cache miss
+     */
+    synchronized Layout obtain(String text, float textSize, Object typeface, Font font) {
+        probe.set(text != null ? text : "", textSize, typeface);
+        Layout layout = layouts.get(probe);
+        if (layout == null) {
+            layout = measure(probe.text, font);
+            Key key = new Key();
+            key.set(probe.text, textSize, typeface);
+            layouts.put(key, layout);
+        }
+        return layout;
+    }
+
+    synchronized int size() {
+        return layouts.size();
+    }
+
+    /**
+     * Lay a text out without caching it
+     */
+    static Layout measure(String text, Font font) {
+        String[] lines = splitLines(text);
+        float[] widths = lines.length == 0 ? NO_WIDTHS : new float[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            widths[i] = font.measureText(lines[i]);
+        }
+        return new Layout(lines, widths, font.ascent(), font.descent());
+    }
+
+    /**
+     * Split a text into its non-empty lines. All the lines share one
+     * baseline, so empty ones can be left out altogether.
+     */
+    static String[] splitLines(String text) {
+        if (text == null || text.length() == 0) {
+            return NO_LINES;
+        }
+        int count = 0;
+        int start = 0;
+        String[] lines = new String[countLines(text)];
+        while (start <= text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            if (end > start) {
+                lines[count++] = text.substring(start, end);
+            }
+            start = end + 1;
+        }
+        if (count == lines.length) {
+            return lines;
+        }
+        String[] nonEmpty = new String[count];
+        System.arraycopy(lines, 0, nonEmpty, 0, count);
+        return nonEmpty;
+    }
+
+    private static int countLines(String text) {
+        int count = 1;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * A text split into lines and measured; shared, so not to be modified
+     */
+    static final class Layout {
+
+        final String[] lines;
+        final float[] widths;
+        final float ascent;
+        final float descent;
+
+        Layout(String[] lines, float[] widths, float ascent, float descent) {
+            this.lines = lines;
+            this.widths = widths;
+            this.ascent = ascent;
+            this.descent = descent;
+        }
+    }
+
+    private static final class Key {
+
+        String text;
+        float textSize;
+        Object typeface;
+
+        void set(String text, float textSize, Object typeface) {
+            this.text = text;
+            this.textSize = textSize;
+            this.typeface = typeface;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return textSize == other.textSize && typeface == other.typeface && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * text.hashCode() + Float.floatToIntBits(textSize)) + System.identityHashCode(typeface);
+        }
+    }
+}
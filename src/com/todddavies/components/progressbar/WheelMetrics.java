@@ -0,0 +1,178 @@
+package com.todddavies.components.progressbar;
+
+/**
+ * Frame timing counters for a wheel, to be scraped into your own telemetry.
+ * Attach one with {@code setMetrics()} on {@link ProgressWheel}, {@link ProgressWheelDrawable}
+ * or {@link ProgressWheelView}; a wheel without metrics doesn't record anything.
+ * One instance may be shared by several wheels to aggregate them.
+ * <p/>
+ * Recorded on the UI thread, so read and reset it from the UI thread too.
+ */
+@SuppressWarnings("unused")
+public class WheelMetrics {
+
+    //Upper bounds of the histogram buckets; the last bucket holds everything above them
+    private static final long[] FRAME_INTERVAL_BOUNDS_MILLIS = {8, 17, 25, 34, 50, 100};
+    private static final long[] DRAW_DURATION_BOUNDS_MICROS = {250, 500, 1000, 2000, 4000, 8000, 16000};
+
+    private final long[] frameIntervals = new long[FRAME_INTERVAL_BOUNDS_MILLIS.length + 1];
+    private final long[] drawDurations = new long[DRAW_DURATION_BOUNDS_MICROS.length + 1];
+    private long frameCount = 0;
+    private long lateFrameCount = 0;
+    private long droppedFrameCount = 0;
+    private long invalidateCount = 0;
+    private long drawCount = 0;
+    private long drawNanos = 0;
+    private long maxDrawNanos = 0;
+    private long spinningMillis = 0;
+
+    //----------------------------------
+    //Recording (package only)
+    //----------------------------------
+
+    /**
+     * @param interval         the time since the wheel's previous frame, or -1 for its first frame
+     * @param expectedInterval the time the wheel asked to wait between frames; an interval
+     *                         one and a half times longer means at least one frame was missed
+     */
+    void onFrame(long interval, long expectedInterval) {
+        frameCount++;
+        if (interval >= 0) {
+            frameIntervals[bucket(FRAME_INTERVAL_BOUNDS_MILLIS, interval)]++;
+            spinningMillis += interval;
+            if (interval > expectedInterval * 3 / 2) {
+                lateFrameCount++;
+                droppedFrameCount += (interval + expectedInterval / 2) / expectedInterval - 1;
+            }
+        }
+    }
+
+    void onInvalidate() {
+        invalidateCount++;
+    }
+
+    void onDraw(long durationNanos) {
+        drawCount++;
+        drawNanos += durationNanos;
+        if (durationNanos > maxDrawNanos) {
+            maxDrawNanos = durationNanos;
+        }
+        drawDurations[bucket(DRAW_DURATION_BOUNDS_MICROS, durationNanos / 1000)]++;
+    }
+
+    private static int bucket(long[] bounds, long value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    //----------------------------------
+    //Getters
+    //----------------------------------
+
+    /**
+     * @return the number of animation frames the wheel received
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the number of frames that came more than one and a half frame intervals after the previous one,
+     * measured against the wheel's frame rate cap if it has one
+     */
+    public long getLateFrameCount() {
+        return lateFrameCount;
+    }
+
+    /**
+     * @return the estimated number of frames missed, assuming a 60Hz display or the wheel's frame rate cap
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    /**
+     * @return the number of invalidations the animation requested
+     */
+    public long getInvalidateCount() {
+        return invalidateCount;
+    }
+
+    /**
+     * @return the number of times the wheel was drawn
+     */
+    public long getDrawCount() {
+        return drawCount;
+    }
+
+    /**
+     * @return the total wall time spent in onDraw/draw, in nanoseconds
+     */
+    public long getDrawNanos() {
+        return drawNanos;
+    }
+
+    public long getMaxDrawNanos() {
+        return maxDrawNanos;
+    }
+
+    /**
+     * @return the time the wheel spent animating, in milliseconds
+     */
+    public long getSpinningMillis() {
+        return spinningMillis;
+    }
+
+    /**
+     * @return the upper bounds of the frame interval buckets, in milliseconds
+     */
+    public long[] getFrameIntervalBucketBounds() {
+        return FRAME_INTERVAL_BOUNDS_MILLIS.clone();
+    }
+
+    /**
+     * @return the number of frame intervals in each bucket, with one more
+     * bucket than there are bounds for the intervals above the last bound
+     */
+    public long[] getFrameIntervalHistogram() {
+        return frameIntervals.clone();
+    }
+
+    /**
+     * @return the upper bounds of the draw duration buckets, in microseconds
+     */
+    public long[] getDrawDurationBucketBounds() {
+        return DRAW_DURATION_BOUNDS_MICROS.clone();
+    }
+
+    /**
+     * @return the number of draws in each bucket, with one more
+     * bucket than there are bounds for the draws above the last bound
+     */
+    public long[] getDrawDurationHistogram() {
+        return drawDurations.clone();
+    }
+
+    /**
+     * Clear all the counters, e.g. after scraping them
+     */
+    public void reset() {
+        for (int i = 0; i < frameIntervals.length; i++) {
+            frameIntervals[i] = 0;
+        }
+        for (int i = 0; i < drawDurations.length; i++) {
+            drawDurations[i] = 0;
+        }
+        frameCount = 0;
+        lateFrameCount = 0;
+        droppedFrameCount = 0;
+        invalidateCount = 0;
+        drawCount = 0;
+        drawNanos = 0;
+        maxDrawNanos = 0;
+        spinningMillis = 0;
+    }
+}
@@ -63,7 +63,7 @@ public class main extends Activity {
         spin.setOnClickListener(new OnClickListener() {
 			public void onClick(View v) {
 				if(!running) {
-					if(pw_two.isSpinning) {
+					if(pw_two.isSpinning()) {
 						pw_two.stopSpinning();
 					}
 					pw_two.resetCount();